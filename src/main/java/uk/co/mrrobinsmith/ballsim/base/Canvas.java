@@ -4,6 +4,8 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.geom.*;
 
+import jdk.jfr.FlightRecorder;
+
 /**
  * Class Canvas - a class to allow for simple graphical drawing on a canvas.
  * 
@@ -18,6 +20,10 @@ public class Canvas {
 	private Graphics2D graphic;
 	private Color backgroundColor;
 	private Image canvasImage;
+	/* number of times the canvas has been painted to the screen, and when it
+	 * was last painted (System.nanoTime()) */
+	private volatile long paintCount = 0;
+	private volatile long lastPaintTime = 0;
 	
 	
     /**
@@ -310,6 +316,26 @@ public class Canvas {
 		graphic.drawImage(oldImage, 0, 0, null);
 	}
 
+	/**
+	 * Returns the number of times the canvas has been painted to the screen.
+	 * A drawing has reached the screen once this has increased since it was
+	 * drawn.
+	 * 
+	 * @return the number of paints
+	 */
+	public long getPaintCount() {
+		return paintCount;
+	}
+
+	/**
+	 * Returns the time the canvas was last painted to the screen.
+	 * 
+	 * @return the time, as given by System.nanoTime()
+	 */
+	public long getLastPaintTime() {
+		return lastPaintTime;
+	}
+
 	/**
 	 * Returns the size of the canvas.
 	 * 
@@ -347,7 +373,28 @@ public class Canvas {
 		private static final long serialVersionUID = 1L;
 
 		public void paint(Graphics g) {
+			/* as in BallSim.step(), the event is only made once Flight
+			 * Recorder is in use */
+			PaintEvent event = null;
+			if (FlightRecorder.isInitialized()) {
+				event = new PaintEvent();
+				event.begin();
+			}
 			g.drawImage(canvasImage, 0, 0, null);
+			lastPaintTime = System.nanoTime();
+			paintCount++;
+			if (event == null) {
+				return;
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				Rectangle clip = g.getClipBounds();
+				if (clip == null) {
+					clip = new Rectangle(getSize());
+				}
+				event.dirtyArea = (long) clip.width * clip.height;
+				event.commit();
+			}
 		}
 	}
 }
@@ -6,21 +6,20 @@ import java.awt.Color;
  * ColorParameter extends Parameter to implement functionality to store a
  * parameter with a Color object as its value.
  * 
+ * The value is held as the name of the color and only turned into a Color
+ * when asked for, so that a simulation run without a GUI never loads the
+ * AWT classes.
+ * 
  * @author Robin Smith
  * @version 1 (03/11/2010)
  */
 
 public class ColorParameter extends Parameter
 {
-	private Color value;
-	private Color defaultValue;
+	private String value;
+	private String defaultValue;
 	private String[] possibleCols;
 	
-    private static Color[] colors = {Color.black, Color.blue, Color.cyan,
-                                     Color.darkGray, Color.gray, Color.green,
-                                     Color.lightGray, Color.magenta,
-                                     Color.orange, Color.pink, Color.red,
-                                     Color.white, Color.yellow};
     private static String[] colorNames = {"black", "blue", "cyan", "darkGray",
                                           "gray", "green", "lightGray",
                                           "magenta", "orange", "pink", "red",
@@ -44,7 +43,7 @@ public class ColorParameter extends Parameter
 	{
 		super(name, isAdjustable);
 		this.possibleCols = possibleCols;
-		value = stringToColor(possibleCols[0]);
+		value = checkName(possibleCols[0]);
 		TYPE = Parameter.COLOR;
 		defaultValue = value;
 	}
@@ -55,7 +54,7 @@ public class ColorParameter extends Parameter
 	 */
 	public Color getValue()
 	{
-		return value;
+		return stringToColor(value);
 	}
 	
 	/**
@@ -64,7 +63,7 @@ public class ColorParameter extends Parameter
 	 */
 	public String getValueString()
 	{
-		return colorToString(value);
+		return value;
 	}
 	
 	/**
@@ -92,7 +91,7 @@ public class ColorParameter extends Parameter
 	 */
 	public void setValue(String color)
 	{
-		value = stringToColor(color);
+		value = checkName(color);
 	}
 	
 	/**
@@ -103,8 +102,8 @@ public class ColorParameter extends Parameter
 	{
 		int n = possibleCols.length;
 		for (int i = 0; i < n; ++i) {
-			if (possibleCols[i].equals(colorToString(value))) {
-				value = stringToColor(possibleCols[(i + 1) % n]);
+			if (possibleCols[i].equals(value)) {
+				value = checkName(possibleCols[(i + 1) % n]);
 				break;
 			}
 		}
@@ -118,8 +117,8 @@ public class ColorParameter extends Parameter
 	{
 		int n = possibleCols.length;
 		for (int i = 0; i < n; ++i) {
-			if (possibleCols[i].equals(colorToString(value))) {
-				value = stringToColor(possibleCols[(n + i - 1) % n]);
+			if (possibleCols[i].equals(value)) {
+				value = checkName(possibleCols[(n + i - 1) % n]);
 				break;
 			}
 		}
@@ -134,15 +133,15 @@ public class ColorParameter extends Parameter
 	}
 	
     /**
-     * Converts a Color object to its String name.
-     * @param color Color object.
-     * @return a String containing the name of that color.
+     * Checks that a color name is one of the known colors.
+     * @param colorName a String containing a color name.
+     * @return the name, or null if it is not a known color.
      */
-    private static String colorToString(Color color)
+    private static String checkName(String colorName)
     {
-    	for (int i = 0; i < colors.length; ++i) {
-    		if (colors[i].equals(color)) {
-    			return colorNames[i];
+    	for (String name : colorNames) {
+    		if (name.equals(colorName)) {
+    			return name;
     		}
     	}
     	return null;
@@ -157,10 +156,26 @@ public class ColorParameter extends Parameter
     {
     	for (int i = 0; i < colorNames.length; ++i) {
     		if (colorNames[i].equals(colorName)) {
-    			return colors[i];
+    			return Palette.colors[i];
     		}
     	}
     	return null;
     }
+    
+	/************************************************************************
+	 * Inner class Palette - holds the Colors, in the same order as
+	 * colorNames. Being a class of its own, it is only loaded, and with it
+	 * java.awt.Color, the first time a Color is asked for.
+	 */
+    private static class Palette
+    {
+        private static final Color[] colors = {Color.black, Color.blue,
+                                               Color.cyan, Color.darkGray,
+                                               Color.gray, Color.green,
+                                               Color.lightGray, Color.magenta,
+                                               Color.orange, Color.pink,
+                                               Color.red, Color.white,
+                                               Color.yellow};
+    }
 	
 }
@@ -37,6 +37,18 @@ public class DoubleDataParameter extends DoubleParameter
         this.paramLine = paramLine;
     }
 	
+    /**
+     * Sets the value of this DoubleDataParameter.
+     * @param value the new value.
+     */
+    public void setValue(double value)
+    {
+    	this.value = value;
+    	if (!(paramLine == null)) {
+    		paramLine.updateDisplay();
+    	}
+    }
+    
     /**
      * Increments the value of this DoubleDataParameter.
      */
@@ -38,6 +38,18 @@ public class IntDataParameter extends IntParameter
         this.paramLine = paramLine;
     }
     
+    /**
+     * Sets the value of this IntDataParameter.
+     * @param value the new value.
+     */
+    public void setValue(int value)
+    {
+    	this.value = value;
+    	if (!(paramLine == null)) {
+    		paramLine.updateDisplay();
+    	}
+    }
+    
     /**
      * Increments the value of this IntDataParameter.
      */
@@ -0,0 +1,163 @@
+package uk.co.mrrobinsmith.ballsim.base;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LogLinearHistogram counts non-negative long values, e.g. durations in
+ * nanoseconds, in a fixed set of buckets so that percentiles can be read
+ * back without storing the values themselves.
+ *
+ * Each power of two is split into SUB_BUCKETS equal buckets, so the width of
+ * a bucket grows with its values and every value is placed to within
+ * 1/SUB_BUCKETS of itself, whatever its size. Recording a value is a few
+ * shifts and one atomic increment; there are no locks and no allocation, so
+ * values can be recorded from any thread, and read from another, while the
+ * histogram is in use. Histograms merge by adding their buckets, so ones
+ * filled separately, e.g. by parallel runs, can be combined exactly.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class LogLinearHistogram
+{
+	/* log2 of the number of buckets per power of two */
+	private static final int SUB_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	/* values below SUB_BUCKETS have a bucket each; every power of two from
+	 * there up to 2^62 has SUB_BUCKETS */
+	private static final int N_BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(N_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value.
+	 * @param value the value, which must not be negative.
+	 */
+	public void record(long value)
+	{
+		counts.incrementAndGet(bucketOf(value));
+		count.incrementAndGet();
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Adds the values recorded in another histogram to this one, as if they
+	 * had been recorded here. Like record(), it takes no locks, so
+	 * histograms filled on different threads can be merged while they are
+	 * in use.
+	 * @param other the histogram to add.
+	 */
+	public void merge(LogLinearHistogram other)
+	{
+		long added = 0;
+		for (int b = 0; b < N_BUCKETS; ++b) {
+			long c = other.counts.get(b);
+			if (c != 0) {
+				counts.addAndGet(b, c);
+				added += c;
+			}
+		}
+		count.addAndGet(added);
+		long value = other.getMax();
+		long m = max.get();
+		while (value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return the count.
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Gets the largest value recorded.
+	 * @return the largest value, or 0 if none have been recorded.
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Gets a percentile of the values recorded, to within the width of its
+	 * bucket.
+	 * @param percentile the percentile, from 0 to 100.
+	 * @return the highest value in the bucket holding the percentile, but no
+	 * more than the largest value recorded, or 0 if none have been recorded.
+	 */
+	public long getPercentile(double percentile)
+	{
+		long total = 0;
+		for (int b = 0; b < N_BUCKETS; ++b) {
+			total += counts.get(b);
+		}
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+		long seen = 0;
+		for (int b = 0; b < N_BUCKETS; ++b) {
+			seen += counts.get(b);
+			if (seen >= rank) {
+				return Math.min(highestValueIn(b), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	/**
+	 * Clears all the values recorded.
+	 */
+	public void reset()
+	{
+		for (int b = 0; b < N_BUCKETS; ++b) {
+			counts.set(b, 0);
+		}
+		count.set(0);
+		max.set(0);
+	}
+
+	/**
+	 * Gets the bucket a value is counted in.
+	 * @param value the value.
+	 * @return the index of the bucket.
+	 */
+	private static int bucketOf(long value)
+	{
+		if (value < SUB_BUCKETS) {
+			return (int) Math.max(0, value);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	/**
+	 * Gets the highest value counted in a bucket.
+	 * @param bucket the index of the bucket.
+	 * @return the highest value.
+	 */
+	private static long highestValueIn(int bucket)
+	{
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long width = 1L << (exponent - SUB_BITS);
+		return (1L << exponent) + (sub + 1) * width - 1;
+	}
+
+}
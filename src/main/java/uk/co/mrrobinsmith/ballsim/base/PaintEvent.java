@@ -0,0 +1,28 @@
+package uk.co.mrrobinsmith.ballsim.base;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * PaintEvent is a Java Flight Recorder event covering one paint of a
+ * Canvas, i.e. one frame reaching the screen.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+@Name("uk.co.mrrobinsmith.ballsim.Paint")
+@Label("Canvas Paint")
+@Category("BallSim")
+@StackTrace(false)
+@Description("One frame painted onto the screen")
+class PaintEvent extends Event
+{
+	@Label("Dirty Area")
+	@Description("Number of pixels painted")
+	long dirtyArea;
+}
@@ -0,0 +1,250 @@
+package uk.co.mrrobinsmith.ballsim.base;
+
+/**
+ * TimeSeries keeps the history of a value recorded once per time step, at
+ * several resolutions, in a fixed amount of memory however long it runs.
+ *
+ * There are LEVELS levels, each a ring of at most capacity buckets:
+ *
+ * - level 0 holds the raw values of the latest time steps;
+ * - level 1 holds the min, max and mean of each FACTOR time steps;
+ * - level 2 holds the min, max and mean of each FACTOR * FACTOR time steps
+ *   to begin with. When it is full, neighbouring buckets are merged in
+ *   pairs, doubling their width, so that it always covers the whole
+ *   history.
+ *
+ * A bucket of levels 1 and 2 is added once all of its time steps have been
+ * recorded. Every value is added straight into the bucket being built at
+ * each level, so the min, max and mean are exact.
+ *
+ * The time steps must be recorded in order, one after another; if one is
+ * recorded out of order, e.g. after the simulation was rewound, the history
+ * is cleared and starts again from it. A TimeSeries is not thread safe.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class TimeSeries
+{
+	public static final int LEVELS = 3;
+	public static final int FACTOR = 10;
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final int capacity;
+	/* buckets of each level, in rings; level 0 uses only means */
+	private final double[][] mins = new double[LEVELS][];
+	private final double[][] maxs = new double[LEVELS][];
+	private final double[][] means = new double[LEVELS][];
+	/* ring index of the oldest bucket, and the number of buckets */
+	private final int[] oldest = new int[LEVELS];
+	private final int[] size = new int[LEVELS];
+	/* time steps per bucket, and the first time step of the oldest */
+	private final long[] width = new long[LEVELS];
+	private final long[] firstTick = new long[LEVELS];
+	/* the bucket being built at each level */
+	private final double[] pendingMin = new double[LEVELS];
+	private final double[] pendingMax = new double[LEVELS];
+	private final double[] pendingSum = new double[LEVELS];
+	private final long[] pendingCount = new long[LEVELS];
+	/* the time step expected next, or -1 if nothing is recorded */
+	private long nextTick = -1;
+
+	/**
+	 * Creates an empty TimeSeries.
+	 * @param capacity the most buckets held at each level; an even number.
+	 */
+	public TimeSeries(int capacity)
+	{
+		this.capacity = capacity;
+		means[0] = new double[capacity];
+		for (int level = 1; level < LEVELS; ++level) {
+			mins[level] = new double[capacity];
+			maxs[level] = new double[capacity];
+			means[level] = new double[capacity];
+		}
+		clear();
+	}
+
+	/**
+	 * Records the value at a time step.
+	 * @param tick the time step, normally the one after the last recorded.
+	 * @param value the value.
+	 */
+	public void record(long tick, double value)
+	{
+		if (tick != nextTick) {
+			clear();
+			for (int level = 0; level < LEVELS; ++level) {
+				firstTick[level] = tick;
+			}
+		}
+		nextTick = tick + 1;
+
+		add(0, value, value, value);
+		for (int level = 1; level < LEVELS; ++level) {
+			if (pendingCount[level] == 0) {
+				pendingMin[level] = value;
+				pendingMax[level] = value;
+				pendingSum[level] = 0.0;
+			}
+			pendingMin[level] = Math.min(pendingMin[level], value);
+			pendingMax[level] = Math.max(pendingMax[level], value);
+			pendingSum[level] += value;
+			if (++pendingCount[level] < width[level]) {
+				continue;
+			}
+			if (level == LEVELS - 1 && size[level] == capacity) {
+				/* the bucket being built carries on to the new width */
+				halve(level);
+			}
+			else {
+				add(level, pendingMin[level], pendingMax[level],
+				    pendingSum[level] / width[level]);
+				pendingCount[level] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Clears the history.
+	 */
+	public void clear()
+	{
+		long w = 1;
+		for (int level = 0; level < LEVELS; ++level) {
+			oldest[level] = 0;
+			size[level] = 0;
+			width[level] = w;
+			firstTick[level] = 0;
+			pendingCount[level] = 0;
+			w *= FACTOR;
+		}
+		nextTick = -1;
+	}
+
+	/**
+	 * Gets the last time step recorded.
+	 * @return the time step, or -1 if nothing is recorded.
+	 */
+	public long getLastTick()
+	{
+		return nextTick - 1;
+	}
+
+	/**
+	 * Gets the number of buckets held at a level.
+	 * @param level the level, from 0 to LEVELS - 1.
+	 * @return the number of buckets.
+	 */
+	public int getSize(int level)
+	{
+		return size[level];
+	}
+
+	/**
+	 * Gets the number of time steps each bucket of a level covers.
+	 * @param level the level.
+	 * @return the number of time steps.
+	 */
+	public long getWidth(int level)
+	{
+		return width[level];
+	}
+
+	/**
+	 * Gets the first time step of the oldest bucket held at a level.
+	 * @param level the level.
+	 * @return the time step.
+	 */
+	public long getFirstTick(int level)
+	{
+		return firstTick[level];
+	}
+
+	/**
+	 * Gets the smallest value in a bucket.
+	 * @param level the level.
+	 * @param i the bucket, from 0 for the oldest to getSize(level) - 1.
+	 * @return the value.
+	 */
+	public double getMin(int level, int i)
+	{
+		double[] values = (level == 0) ? means[0] : mins[level];
+		return values[(oldest[level] + i) % capacity];
+	}
+
+	/**
+	 * Gets the largest value in a bucket.
+	 * @param level the level.
+	 * @param i the bucket, from 0 for the oldest to getSize(level) - 1.
+	 * @return the value.
+	 */
+	public double getMax(int level, int i)
+	{
+		double[] values = (level == 0) ? means[0] : maxs[level];
+		return values[(oldest[level] + i) % capacity];
+	}
+
+	/**
+	 * Gets the mean of the values in a bucket.
+	 * @param level the level.
+	 * @param i the bucket, from 0 for the oldest to getSize(level) - 1.
+	 * @return the value.
+	 */
+	public double getMean(int level, int i)
+	{
+		return means[level][(oldest[level] + i) % capacity];
+	}
+
+	/**
+	 * Adds a bucket to a level, dropping the oldest bucket if the level is
+	 * full.
+	 * @param level the level.
+	 * @param min the smallest value in the bucket.
+	 * @param max the largest value in the bucket.
+	 * @param mean the mean of the values in the bucket.
+	 */
+	private void add(int level, double min, double max, double mean)
+	{
+		if (size[level] == capacity) {
+			oldest[level] = (oldest[level] + 1) % capacity;
+			firstTick[level] += width[level];
+			size[level]--;
+		}
+		int i = (oldest[level] + size[level]) % capacity;
+		if (level > 0) {
+			mins[level][i] = min;
+			maxs[level][i] = max;
+		}
+		means[level][i] = mean;
+		size[level]++;
+	}
+
+	/**
+	 * Merges the buckets of a full level in pairs, doubling their width.
+	 * @param level the level.
+	 */
+	private void halve(int level)
+	{
+		double[] mn = mins[level];
+		double[] mx = maxs[level];
+		double[] me = means[level];
+		int start = oldest[level];
+		for (int j = 0; j < capacity / 2; ++j) {
+			int a = (start + 2 * j) % capacity;
+			int b = (start + 2 * j + 1) % capacity;
+			double min = Math.min(mn[a], mn[b]);
+			double max = Math.max(mx[a], mx[b]);
+			double mean = (me[a] + me[b]) / 2.0;
+			/* j is never ahead of the pair it is made from */
+			int to = (start + j) % capacity;
+			mn[to] = min;
+			mx[to] = max;
+			me[to] = mean;
+		}
+		size[level] = capacity / 2;
+		width[level] *= 2;
+	}
+
+}
@@ -5,7 +5,7 @@ import uk.co.mrrobinsmith.ballsim.base.*;
 /**
  * Ball represents a physical ball with a graphical representation. The ball
  * itself determines how it moves in response to external forces acting on it.
- * Movement is made by repeated calls to the move() method.
+ * Movement is made by repeated calls to the step() method.
  * 
  * @author Robin Smith
  * @version 2 (04/11/2010)
@@ -41,6 +41,14 @@ public class Ball
     private boolean isStopped = false; //check for no movement
     private boolean isRolling = false; //check for purely horizontal movement
     private boolean isOffScreen = false;
+    private boolean hasBounced = false; //check for a bounce this time step
+    
+    /* bits used to pack the boolean state of the ball into an int */
+    private static final int STOPPED_X = 1;
+    private static final int STOPPED_Y = 2;
+    private static final int STOPPED = 4;
+    private static final int ROLLING = 8;
+    private static final int OFF_SCREEN = 16;
 
     /**
      * Constructor for BouncingBall object.
@@ -53,7 +61,8 @@ public class Ball
      * @param airRes DoubleParameter for external air resistance.
      * @param rollRes DoubleParameter for surface rolling friction.
      * @param rightWind DoubleParameter for the strength of East-blowing wind.
-     * @param canvas canvas for this Ball to be drawn on.
+     * @param canvas canvas for this Ball to be drawn on, or null if the Ball
+     * is not to be drawn.
      * @param platformPos int array of platform heights in the simulation as a
      * function of x-coordinate in the simulation.
      * @param data DataAnalyser object to send data to.
@@ -79,7 +88,6 @@ public class Ball
         this.canvas = canvas;
         this.platformPos = platformPos;
         this.data = data;
-        data.incBallsOnScreen();
     }
 
     /**
@@ -100,46 +108,145 @@ public class Ball
     	return isStopped;
     }
     
+    /**
+     * Checks whether the ball was outside the simulation bounds when it last
+     * moved.
+     * @return true if the ball is off screen, false otherwise.
+     */
+    public boolean isOffScreen()
+    {
+    	return isOffScreen;
+    }
+    
+    /**
+     * 
+     * @return the horizontal position of the ball
+     */
+    public double getXPos()
+    {
+    	return xPos;
+    }
+    
+    /**
+     * 
+     * @return the vertical position of the ball
+     */
+    public double getYPos()
+    {
+    	return yPos;
+    }
+    
+    /**
+     * 
+     * @return the horizontal speed of the ball
+     */
+    public double getXVel()
+    {
+    	return xVel;
+    }
+    
+    /**
+     * 
+     * @return the vertical speed of the ball
+     */
+    public double getYVel()
+    {
+    	return yVel;
+    }
+    
+    /**
+     * Gets the boolean state of the ball packed into the bits of an int.
+     * @return the packed state.
+     */
+    int getFlags()
+    {
+    	int flags = 0;
+    	if (isStoppedX) flags |= STOPPED_X;
+    	if (isStoppedY) flags |= STOPPED_Y;
+    	if (isStopped) flags |= STOPPED;
+    	if (isRolling) flags |= ROLLING;
+    	if (isOffScreen) flags |= OFF_SCREEN;
+    	return flags;
+    }
+    
+    /**
+     * Puts the ball into a given state, e.g. one saved in a Checkpoint. Does
+     * not change the DataAnalyser's counts.
+     * @param xPos the horizontal position.
+     * @param yPos the vertical position.
+     * @param xVel the horizontal speed.
+     * @param yVel the vertical speed.
+     * @param flags the boolean state, as returned by getFlags().
+     */
+    void setState(double xPos, double yPos, double xVel, double yVel,
+                  int flags)
+    {
+    	this.xPos = xPos;
+    	this.yPos = yPos;
+    	this.xVel = xVel;
+    	this.yVel = yVel;
+    	isStoppedX = (flags & STOPPED_X) != 0;
+    	isStoppedY = (flags & STOPPED_Y) != 0;
+    	isStopped = (flags & STOPPED) != 0;
+    	isRolling = (flags & ROLLING) != 0;
+    	isOffScreen = (flags & OFF_SCREEN) != 0;
+    }
+    
     /**
      * Draws this Ball at its current position onto its Canvas.
      */
     public void draw()
     {
-    	if (ballInXBounds() && ballInYBounds()) {
+    	if (updateScreenState() && canvas != null) {
     		canvas.setForegroundColor(color.getValue());
-        	canvas.fillCircle((int) (xPos), (int) (yPos), diameter.getValue());
+    		canvas.fillCircle((int) (xPos), (int) (yPos), diameter.getValue());
+    	}
+    }
+    
+    /**
+     * Checks whether this Ball is within the simulation bounds and updates the
+     * on-screen and off-screen counts if that has changed since the last
+     * check.
+     * @return true if the ball is on screen, false otherwise.
+     */
+    private boolean updateScreenState()
+    {
+    	if (ballInXBounds() && ballInYBounds()) {
         	if (isOffScreen) {
         		isOffScreen = false;
         		data.decBallsOffScreen();
         		data.incBallsOnScreen();
         	}
+        	return true;
     	}
     	else if (!isOffScreen){
     		isOffScreen = true;
     		data.incBallsOffScreen();
     		data.decBallsOnScreen();
     	}
+    	return false;
     }
 
     /**
-     * Erases this ball at its current position.
+     * Moves the ball according to the external forces acting on it in the
+     * given time interval, without drawing it.
+     * @param delta_t the time interval for movement.
+     * @return true if the ball bounced off a platform, false otherwise.
      */
-    private void erase()
+    public boolean step(double delta_t)
     {
-    	if (ballInXBounds() && ballInYBounds())
-    		canvas.eraseCircle((int) xPos, (int) yPos, diameter.getValue());
-    }    
-
+    	hasBounced = false;
+    	advance(delta_t);
+    	updateScreenState();
+    	return hasBounced;
+    }
+    
     /**
-     * Erases this ball at its current position, then moves it according to its
-     * new speed determined by the external forces acting on it in the given
-     * time interval.
+     * Updates the ball's position and speed for the given time interval.
      * @param delta_t the time interval for movement.
      */
-    public void move(double delta_t)
+    private void advance(double delta_t)
     {
-    	erase();
-    	
     	if (!isStopped) {		
     		if (!isStoppedX)
     			moveHorizontal(delta_t);
@@ -148,8 +255,6 @@ public class Ball
     	}
     	if (isStoppedX && isStoppedY && !isStopped)
     		stopBall();
-    	
-    	draw();
     }
     
     /**
@@ -233,6 +338,7 @@ public class Ball
     	if (!isStopped) {
     		yPos = platformPos[(int) xPos];
     		yVel = -1.0 * yVel * (1.0 - ballHyst.getValue());
+    		hasBounced = (yVel <= -1.0);
     	}
     	if (yVel > -1.0) {
     		isRolling = true;
@@ -0,0 +1,25 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+/**
+ * BallEventHandler is implemented by classes which analyse the events of a
+ * simulation's balls. Events are taken from a BallEventRing by polling a
+ * subscription, on the thread of whoever polls it.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public interface BallEventHandler
+{
+
+	/**
+	 * Handles one event.
+	 * @param tick the time step the event happened in.
+	 * @param ball the index of the ball.
+	 * @param type the type of event, e.g. BallEventRing.BOUNCE.
+	 * @param x the horizontal position of the ball after the time step.
+	 * @param y the vertical position of the ball after the time step.
+	 */
+	public void handle(int tick, int ball, int type, float x, float y);
+
+}
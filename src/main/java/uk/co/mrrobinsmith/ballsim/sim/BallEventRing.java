@@ -0,0 +1,231 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BallEventRing passes the events of a simulation's balls - bounces, stops,
+ * and moves off and back on screen - from the simulation thread to any
+ * number of subscribers, without locking and without allocating.
+ *
+ * Events are kept in a fixed ring of primitive arrays, one per field. The
+ * simulation never waits for subscribers: once the ring is full the oldest
+ * events are overwritten, and a subscriber which falls that far behind
+ * skips them and counts them as lost.
+ *
+ * Each slot has a sequence number of its own, which works as a sequence
+ * lock. The producer makes it odd while it writes the slot, and then sets
+ * it to 2 * (n + 1) for the nth event. A subscriber reading event n checks
+ * the number before and after reading the slot: if it was 2 * (n + 1) both
+ * times, the event is complete; if it is higher, the event was overwritten.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class BallEventRing
+{
+	public static final int BOUNCE = 0;
+	public static final int STOP = 1;
+	public static final int OFF_SCREEN = 2;
+	public static final int ON_SCREEN = 3;
+	/* bytes taken by each slot of the ring */
+	private static final int SLOT_BYTES = 25;
+
+	/* gives ordered access to the slot sequence numbers */
+	private static final VarHandle SEQUENCE =
+		MethodHandles.arrayElementVarHandle(long[].class);
+
+	private final int mask;
+	private final long[] sequences;
+	private final int[] ticks;
+	private final int[] balls;
+	private final byte[] types;
+	private final float[] xs;
+	private final float[] ys;
+	private final AtomicInteger nSubscribers = new AtomicInteger();
+	/* the number of events added; written only by the producer */
+	private volatile long head = 0;
+
+	/**
+	 * Creates a BallEventRing.
+	 * @param capacity the number of events it holds, a power of two.
+	 * @throws IllegalArgumentException if the capacity is not a power of two.
+	 */
+	public BallEventRing(int capacity)
+	{
+		if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("capacity must be a power of "
+			                                   + "two: " + capacity);
+		}
+		mask = capacity - 1;
+		sequences = new long[capacity];
+		ticks = new int[capacity];
+		balls = new int[capacity];
+		types = new byte[capacity];
+		xs = new float[capacity];
+		ys = new float[capacity];
+	}
+
+	/**
+	 * Gets the number of events the ring holds.
+	 * @return the capacity.
+	 */
+	public int getCapacity()
+	{
+		return mask + 1;
+	}
+
+	/**
+	 * Gets the memory the ring takes.
+	 * @return the size in bytes, roughly.
+	 */
+	public long getMemoryUse()
+	{
+		return (long) SLOT_BYTES * getCapacity();
+	}
+
+	/**
+	 * Checks whether anyone is subscribed, so that the producer can skip
+	 * looking for events nobody will read.
+	 * @return true if there are subscribers, false otherwise.
+	 */
+	public boolean hasSubscribers()
+	{
+		return nSubscribers.get() > 0;
+	}
+
+	/**
+	 * Adds an event. Must only be called by the one producer thread.
+	 * @param tick the time step the event happened in.
+	 * @param ball the index of the ball.
+	 * @param type the type of event, e.g. BOUNCE.
+	 * @param x the horizontal position of the ball.
+	 * @param y the vertical position of the ball.
+	 */
+	public void add(int tick, int ball, int type, float x, float y)
+	{
+		long n = head;
+		int slot = (int) n & mask;
+		/* odd while the slot is being written */
+		SEQUENCE.setOpaque(sequences, slot, 2 * n + 1);
+		VarHandle.storeStoreFence();
+		ticks[slot] = tick;
+		balls[slot] = ball;
+		types[slot] = (byte) type;
+		xs[slot] = x;
+		ys[slot] = y;
+		SEQUENCE.setRelease(sequences, slot, 2 * n + 2);
+		head = n + 1;
+	}
+
+	/**
+	 * Gets the number of events added so far.
+	 * @return the number of events.
+	 */
+	public long getHead()
+	{
+		return head;
+	}
+
+	/**
+	 * Subscribes to the events added from now on.
+	 * @return the Subscription.
+	 */
+	public Subscription subscribe()
+	{
+		nSubscribers.incrementAndGet();
+		return new Subscription(head);
+	}
+
+	/************************************************************************
+	 * Inner class Subscription - one subscriber's place in the ring. A
+	 * Subscription must only be polled by one thread at a time.
+	 */
+	public class Subscription
+	{
+		private long next;
+		private long lost = 0;
+		private boolean isClosed = false;
+
+		/**
+		 * Creates a Subscription.
+		 * @param next the number of the first event to read.
+		 */
+		private Subscription(long next)
+		{
+			this.next = next;
+		}
+
+		/**
+		 * Passes the events added since the last poll to a handler, oldest
+		 * first, skipping any that have been overwritten.
+		 * @param handler the handler.
+		 * @param max the most events to pass.
+		 * @return the number of events passed.
+		 */
+		public int poll(BallEventHandler handler, int max)
+		{
+			int n = 0;
+			while (n < max && !isClosed) {
+				int slot = (int) next & mask;
+				long expected = 2 * next + 2;
+				long before = (long) SEQUENCE.getAcquire(sequences, slot);
+				if (before < expected) {
+					/* not yet added, or being added */
+					break;
+				}
+				int tick = ticks[slot];
+				int ball = balls[slot];
+				int type = types[slot];
+				float x = xs[slot];
+				float y = ys[slot];
+				VarHandle.loadLoadFence();
+				long after = (long) SEQUENCE.getOpaque(sequences, slot);
+				if (before != expected || after != expected) {
+					/* overwritten; carry on from the oldest event left */
+					long oldest = Math.max(next + 1, head - mask);
+					lost += oldest - next;
+					next = oldest;
+					continue;
+				}
+				handler.handle(tick, ball, type, x, y);
+				next++;
+				n++;
+			}
+			return n;
+		}
+
+		/**
+		 * Gets the number of events added which have not yet been polled.
+		 * @return the number of events.
+		 */
+		public long getBacklog()
+		{
+			return Math.max(0, head - next);
+		}
+
+		/**
+		 * Gets the number of events skipped because they were overwritten
+		 * before they were polled.
+		 * @return the number of events.
+		 */
+		public long getLost()
+		{
+			return lost;
+		}
+
+		/**
+		 * Unsubscribes. No more events are passed by poll().
+		 */
+		public void close()
+		{
+			if (!isClosed) {
+				isClosed = true;
+				nSubscribers.decrementAndGet();
+			}
+		}
+	}
+
+}
@@ -1,6 +1,11 @@
 package uk.co.mrrobinsmith.ballsim.sim;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
 
+import jdk.jfr.FlightRecorder;
+
 import uk.co.mrrobinsmith.ballsim.base.*;
 import uk.co.mrrobinsmith.ballsim.base.ColorParameter;
 
@@ -21,7 +26,21 @@ import uk.co.mrrobinsmith.ballsim.base.ColorParameter;
 public class BallSim implements Runnable
 {	
 	private BallSimGUI gui;
-    private Ball[] balls;
+    /* the balls, split into pages; a page may be shared with forks of the
+     * simulation until either of them needs to change a ball in it */
+    private Ball[][] pages;
+    /* whether each page belongs to this simulation alone */
+    private boolean[] ownsPage;
+    /* the sum of the vertical positions in each page whose balls have all
+     * stopped, which never changes, or NaN if not known to have stopped */
+    private double[] stoppedYSums;
+    private int ballCount;
+    private static final int PAGE_SIZE = 64;
+    /* record the ball states at every time step */
+    private SimRecorder[] recorders = new SimRecorder[0];
+    /* recorders made for balls which have since been replaced by a
+     * different number of balls; closed when they are removed */
+    private SimRecorder[] detached = new SimRecorder[0];
     private static final String[] BALL_COLORS = {"green", "cyan", "red",
                                                  "yellow", "blue", "white",
                                                  "pink"};
@@ -32,12 +51,59 @@ public class BallSim implements Runnable
     private DataAnalyser data;
     private Random random;
     private static final int SEED = 50;
+    /* version of the physics, part of the key for cached results; must be
+     * increased whenever a change alters simulation results */
+    public static final int ENGINE_VERSION = 2;
 	/* time step in simulation */
     private static double DELTA_T = 0.2;
     private static final double DEFAULT_TIME_STEP = 8.0;
 	/* array which stores the platform positions */
     private int[] platformPositions;
-    boolean isRunning = false;
+    volatile boolean isRunning = false;
+    /* number of time steps requested to be fast forwarded */
+    private volatile int fastForwardTicks = 0;
+    /* interval between fast forward progress reports, in nanoseconds */
+    private static final long PROGRESS_INTERVAL = 100000000L;
+    /* recent history for stepping back, or null if rewinding is off */
+    private RewindBuffer rewind;
+    private int rewindTicks = 0;
+    private int rewindBudget = 0;
+    /* time step requested to be rewound to, or -1 for none */
+    private volatile int rewindRequest = -1;
+    /* follows a sample of the balls to draw their trails, or null */
+    private volatile BallTracer tracer;
+    /* whether the Renderer draws its performance overlay */
+    private volatile boolean isHudShown = false;
+    /* how long the latest time step took to simulate, in nanoseconds */
+    private long lastStepTime = 0;
+    /* the greatest amount of real time the simulation catches up on at
+     * once, in nanoseconds */
+    private static final long MAX_LAG = 250000000L;
+    /* ball positions before the latest time step, for interpolation */
+    private float[] prevX = new float[0];
+    private float[] prevY = new float[0];
+    private boolean hasPrevious = false;
+    /* snapshots passed to the Renderer while the simulation runs */
+    private final TripleBuffer<SimSnapshot> snapshots =
+        new TripleBuffer<SimSnapshot>(new SimSnapshot(), new SimSnapshot(),
+                                      new SimSnapshot());
+    /* times the phases of each time step and frame */
+    private final PhaseTimer timer = new PhaseTimer();
+    /* interval between reports of the phase timings, in nanoseconds */
+    private static final long TIMING_INTERVAL = 500000000L;
+    /* approximate size of a Ball and its slot in a page, in bytes */
+    private static final int BALL_BYTES = 128;
+    /* sums over the page last stepped, from which the energy and
+     * momentum totals are built, and its number of stopped balls */
+    private final double[] partialSums = new double[5];
+    /* bounces, stops and screen changes, for analysis plugins; made the
+     * first time it is asked for */
+    private BallEventRing events;
+    /* time steps of events the event ring holds, at the most a time step
+     * can add */
+    private static final int EVENT_TICKS = 8;
+    /* the data parameters followed by the timing parameters */
+    private Parameter[] dataParams;
     
 	//simulation parameters
     private BoundIntParameter simWidth;
@@ -61,9 +127,13 @@ public class BallSim implements Runnable
 	private BoundIntParameter ballSpread;
 	/* amount of spread in initial ball velocities */
 	private BoundIntParameter ballVelSpread;
+	/* decides when the simulation finishes by itself */
+	private TerminationPolicy termination;
+	/* paces the Renderer's frames */
+	private FrameScheduler frameScheduler;
 
 	
-	private final int N_PARAMS = 15;
+	private final int N_PARAMS = 19;
 	private Parameter[] params;
 
     /**
@@ -134,6 +204,21 @@ public class BallSim implements Runnable
     	                                 false);
     	params[i++] = ballVelSpread;
     	
+    	termination = new TerminationPolicy();
+    	for (Parameter param : termination.getParams()) {
+    		params[i++] = param;
+    	}
+    	frameScheduler = new FrameScheduler();
+    	for (Parameter param : frameScheduler.getParams()) {
+    		params[i++] = param;
+    	}
+    	
+    	Parameter[] dataOnly = data.getParams();
+    	Parameter[] timings = timer.getParams();
+    	dataParams = Arrays.copyOf(dataOnly, dataOnly.length + timings.length);
+    	System.arraycopy(timings, 0, dataParams, dataOnly.length,
+    	                 timings.length);
+    	
     	createPlatforms();
     }
         
@@ -161,6 +246,51 @@ public class BallSim implements Runnable
      * @return an array of type Parameter.
      */
     public Parameter[] getDataParams()
+    {
+    	return dataParams;
+    }
+    
+    /**
+     * Gets the current simulation time.
+     * @return the time step.
+     */
+    public int getSimTime()
+    {
+    	return data.getSimTime();
+    }
+    
+    /**
+     * Estimates the memory held by the simulation's objects: its balls,
+     * platforms, rewind history, data history and event ring. Before
+     * createObjects() has been called, the estimate is of the objects it will
+     * create.
+     * @return the estimate in bytes.
+     */
+    public synchronized long getMemoryEstimate()
+    {
+    	long balls = (pages == null) ? nBalls.getValue() : ballCount;
+    	long width = (platformPositions == null) ? simWidth.getValue()
+    	                                         : platformPositions.length;
+    	long ring = (events == null) ? 0 : events.getMemoryUse();
+    	return balls * BALL_BYTES + 4 * width + rewindBudget
+    	       + data.getHistory().getMemoryUse() + ring;
+    }
+    
+    /**
+     * Gets the PhaseTimer timing the phases of the simulation.
+     * @return the PhaseTimer.
+     */
+    PhaseTimer getTimer()
+    {
+    	return timer;
+    }
+    
+    /**
+     * Gets the results of the simulation: the data parameters kept in
+     * checkpoints and the result cache, without the timing parameters.
+     * @return an array of type Parameter.
+     */
+    public Parameter[] getResults()
     {
     	return data.getParams();
     }
@@ -174,6 +304,42 @@ public class BallSim implements Runnable
     	return simWidth.getValue();
     }
     
+    /**
+     * 
+     * @return the diameter of the balls
+     */
+    public int getBallDiameter()
+    {
+    	return ballDiameter.getValue();
+    }
+    
+    /**
+     * 
+     * @return the number of balls in the simulation
+     */
+    public int getBallCount()
+    {
+    	return ballCount;
+    }
+    
+    /**
+     * 
+     * @return the name of the colour of the balls
+     */
+    public String getBallColorName()
+    {
+    	return ballColor.getValueString();
+    }
+    
+    /**
+     * 
+     * @return the name of the colour of the platforms
+     */
+    public String getPlatformColorName()
+    {
+    	return platColor.getValueString();
+    }
+    
     /**
      * 
      * @return the height of the simulation space
@@ -183,6 +349,36 @@ public class BallSim implements Runnable
     	return simHeight.getValue();
     }
     
+    /**
+     * 
+     * @return the seed used to create the balls in the simulation
+     */
+    public long getSeed()
+    {
+    	return SEED;
+    }
+    
+    /**
+     * 
+     * @return the policy deciding when the simulation finishes by itself
+     */
+    public TerminationPolicy getTerminationPolicy()
+    {
+    	return termination;
+    }
+    
+    /**
+     * Gets the canvas the simulation is drawn on.
+     * @return the GUI's Canvas, or null if the simulation has no GUI.
+     */
+    private Canvas getCanvas()
+    {
+    	if (gui == null) {
+    		return null;
+    	}
+    	return gui.getCanvas();
+    }
+    
     /**
      * Returns a boolean value to indicate whether or not the simulation is
      * currently isRunning.
@@ -193,12 +389,27 @@ public class BallSim implements Runnable
     }
     
     /**
-     * Creates all the platforms and balls in the simulation.
+     * Creates all the platforms and balls in the simulation. If the number
+     * of balls changes, the attached SimRecorders are detached, as they were
+     * made for the old balls.
      */
     public void createObjects()
     {
+    	/* the traced balls are about to be replaced */
+    	stopTracing();
+    	int before;
+    	synchronized (this) {
+    		before = (pages == null) ? nBalls.getValue() : ballCount;
+    	}
     	createPlatforms();
     	createBalls();
+    	synchronized (this) {
+    		if (ballCount != before) {
+    			detachRecorders();
+    		}
+    		measureEnergy();
+    		resetRewind();
+    	}
     }
     
 	/**
@@ -218,7 +429,7 @@ public class BallSim implements Runnable
             int xPos = i * length;
             int yPos = (int) (0.5 * simHeight.getValue()) + (i * vertShift);      
             
-            platforms[i] = new Platform(xPos, yPos, length, gui.getCanvas()); 
+            platforms[i] = new Platform(xPos, yPos, length, getCanvas()); 
             
             /* add the remainder onto last platform */
             if (i == (n - 1)) {
@@ -237,26 +448,550 @@ public class BallSim implements Runnable
     private void createBalls()
     {
     	int n = nBalls.getValue();
-        balls = new Ball[n];
+        allocatePages(n);
+        random.setSeed(SEED);
         for (int i = 0; i < n; ++i){
-            balls[i] =
-            	new Ball(100 + 0.025 * random.nextInt(ballSpread.getValue()),
-            	         20 + 0.02 * random.nextInt(ballSpread.getValue()),
-            	         8 + 0.01 * random.nextInt(ballVelSpread.getValue()),
-            	         0.01 * random.nextInt(ballVelSpread.getValue()),
-            	         ballDiameter,
-            	         ballColor,
-            	         gravity,
-            	         ballHyst,
-            	         airRes,
-            	         rollRes,
-            	         rightWind,
-            	         gui.getCanvas(),
-            	         platformPositions,
-            	         data);
+            setBall(i,
+            	newBall(100 + 0.025 * random.nextInt(ballSpread.getValue()),
+            	        20 + 0.02 * random.nextInt(ballSpread.getValue()),
+            	        8 + 0.01 * random.nextInt(ballVelSpread.getValue()),
+            	        0.01 * random.nextInt(ballVelSpread.getValue())));
+            data.incBallsOnScreen();
         }
     }
     
+    /**
+     * Makes empty pages, owned by this simulation, for a number of balls.
+     * @param n the number of balls.
+     */
+    private void allocatePages(int n)
+    {
+    	ballCount = n;
+    	pages = new Ball[(n + PAGE_SIZE - 1) / PAGE_SIZE][];
+    	ownsPage = new boolean[pages.length];
+    	stoppedYSums = new double[pages.length];
+    	Arrays.fill(stoppedYSums, Double.NaN);
+    	for (int p = 0; p < pages.length; ++p) {
+    		pages[p] = new Ball[Math.min(PAGE_SIZE, n - p * PAGE_SIZE)];
+    		ownsPage[p] = true;
+    	}
+    }
+    
+    /**
+     * Puts a ball into its place in the pages.
+     * @param i the index of the ball.
+     * @param ball the Ball.
+     */
+    private void setBall(int i, Ball ball)
+    {
+    	pages[i / PAGE_SIZE][i % PAGE_SIZE] = ball;
+    }
+    
+    /**
+     * Gets all the balls in the simulation. The balls must not be changed, as
+     * they may be shared with forks of the simulation.
+     * @return a new array holding the balls.
+     */
+    Ball[] getBalls()
+    {
+    	Ball[] balls = new Ball[ballCount];
+    	for (int p = 0; p < pages.length; ++p) {
+    		System.arraycopy(pages[p], 0, balls, p * PAGE_SIZE,
+    		                 pages[p].length);
+    	}
+    	return balls;
+    }
+    
+    /**
+     * Gets a page of balls for changing, first making this simulation's own
+     * copy of it if it is shared with a fork.
+     * @param p the index of the page.
+     * @return the page.
+     */
+    private Ball[] ownPage(int p)
+    {
+    	if (!ownsPage[p]) {
+    		Ball[] shared = pages[p];
+    		Ball[] page = new Ball[shared.length];
+    		for (int i = 0; i < page.length; ++i) {
+    			page[i] = copyBall(shared[i]);
+    		}
+    		pages[p] = page;
+    		ownsPage[p] = true;
+    	}
+    	return pages[p];
+    }
+    
+    /**
+     * Checks whether a time step would leave a page unchanged because all of
+     * its balls have stopped.
+     * @param page the page.
+     * @return true if every ball in the page has stopped, false otherwise.
+     */
+    private static boolean isStopped(Ball[] page)
+    {
+    	for (Ball ball : page) {
+    		if (!ball.isStopped()) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+    
+    /**
+     * Makes a copy of a ball which uses this simulation's parameters.
+     * @param ball the Ball to copy.
+     * @return the copy.
+     */
+    private Ball copyBall(Ball ball)
+    {
+    	Ball copy = newBall(0.0, 0.0, 0.0, 0.0);
+    	copy.setState(ball.getXPos(), ball.getYPos(), ball.getXVel(),
+    	              ball.getYVel(), ball.getFlags());
+    	return copy;
+    }
+    
+    /**
+     * Creates a branch of the simulation in its current state, which can then
+     * be given different parameter values and run forward independently, for
+     * example on another thread. The branch shares this simulation's
+     * platforms, which never change, and its pages of balls, which are only
+     * copied when the branch or this simulation first needs to change them.
+     * The branch is not drawn. May be called while the simulation is running.
+     * @return the branch.
+     */
+    public synchronized BallSim fork()
+    {
+    	BallSim branch = new BallSim(null);
+    	copyValues(params, branch.params);
+    	copyValues(data.getParams(), branch.data.getParams());
+    	branch.platforms = platforms;
+    	branch.platformPositions = platformPositions;
+    	branch.pages = pages.clone();
+    	branch.ownsPage = new boolean[pages.length];
+    	branch.stoppedYSums = stoppedYSums.clone();
+    	branch.ballCount = ballCount;
+    	Arrays.fill(ownsPage, false);
+    	return branch;
+    }
+    
+    /**
+     * Starts recording the position and speed of every ball at every time
+     * step into memory-mapped segment files. Before createObjects() has been
+     * called, the records are made to hold the number of balls set.
+     * @param dir the directory to write the segment files in.
+     * @param name the name the segment files start with.
+     * @return the TrajectoryRecorder doing the recording.
+     */
+    public TrajectoryRecorder startRecording(File dir, String name)
+    {
+    	TrajectoryRecorder recorder;
+    	synchronized (this) {
+    		int balls = (pages == null) ? nBalls.getValue() : ballCount;
+    		recorder = new TrajectoryRecorder(dir, name, balls,
+    		                              TrajectoryRecorder.DEFAULT_SEGMENT_SIZE);
+    	}
+    	addRecorder(recorder);
+    	return recorder;
+    }
+    
+    /**
+     * Starts recording the simulation into a compressed, seekable recording
+     * file which can be replayed later.
+     * @param file the recording file.
+     * @return the RecordingWriter doing the recording.
+     * @throws IOException if the file cannot be created.
+     */
+    public RecordingWriter startReplayRecording(File file) throws IOException
+    {
+    	RecordingWriter recorder;
+    	synchronized (this) {
+    		recorder = new RecordingWriter(file, this,
+    		                               RecordingWriter.DEFAULT_KEYFRAME_INTERVAL);
+    	}
+    	addRecorder(recorder);
+    	return recorder;
+    }
+    
+    /**
+     * Starts exporting the ball positions into a memory-mapped file, for
+     * programs outside the JVM to draw. A snapshot is exported at most once
+     * per frame at the target frame rate. Before createObjects() has been
+     * called, the file is made to hold the number of balls set.
+     * @param file the file to export into.
+     * @return the StateExporter doing the exporting.
+     * @throws IOException if the file cannot be created.
+     */
+    public StateExporter startStateExport(File file) throws IOException
+    {
+    	StateExporter exporter;
+    	synchronized (this) {
+    		int capacity = (pages == null) ? nBalls.getValue() : ballCount;
+    		exporter = new StateExporter(file, capacity,
+    		                             frameScheduler.getFrameTime());
+    	}
+    	addRecorder(exporter);
+    	return exporter;
+    }
+    
+    /**
+     * Starts building up statistics of where and when the balls stop, and
+     * how often they bounce first, from the current time step on.
+     * @return the StopAnalytics doing the analysis.
+     */
+    public StopAnalytics startStopAnalytics()
+    {
+    	StopAnalytics analytics;
+    	synchronized (this) {
+    		int balls = (pages == null) ? nBalls.getValue() : ballCount;
+    		analytics = new StopAnalytics(getPlatformEdges(), balls,
+    		                              data.getSimTime(), getEvents());
+    	}
+    	addRecorder(analytics);
+    	return analytics;
+    }
+    
+    /**
+     * Gets the left-hand ends of the platforms, followed by the right-hand
+     * end of the last. Before createObjects() has been called, these are
+     * where the platforms will be.
+     * @return an array of platform edges, in order.
+     */
+    public synchronized int[] getPlatformEdges()
+    {
+    	int n = (platforms == null) ? nPlatforms.getValue() : platforms.length;
+    	int[] edges = new int[n + 1];
+    	for (int i = 0; i < n; ++i) {
+    		edges[i] = (platforms == null)
+    		           ? i * (simWidth.getValue() / n) : platforms[i].getX();
+    	}
+    	edges[n] = (platformPositions == null)
+    	           ? simWidth.getValue() : platformPositions.length;
+    	return edges;
+    }
+    
+    /**
+     * Starts tracing a random sample of the balls, whose recent paths are
+     * then drawn as trails. Any earlier tracing is stopped.
+     * @param sampleSize the number of balls to trace.
+     * @param trailLength the number of time steps each trail covers.
+     * @return the BallTracer doing the tracing.
+     */
+    public BallTracer startTracing(int sampleSize, int trailLength)
+    {
+    	stopTracing();
+    	BallTracer added;
+    	synchronized (this) {
+    		added = new BallTracer(ballCount, PAGE_SIZE, sampleSize,
+    		                       trailLength, getSeed());
+    	}
+    	addRecorder(added);
+    	tracer = added;
+    	return added;
+    }
+    
+    /**
+     * Stops tracing balls. The trails stay on the canvas until it is next
+     * redrawn.
+     */
+    public void stopTracing()
+    {
+    	BallTracer removed = tracer;
+    	if (removed == null) {
+    		return;
+    	}
+    	tracer = null;
+    	try {
+    		removeRecorder(removed);
+    	}
+    	catch (IOException e) {
+    		/* a BallTracer has nothing to write */
+    	}
+    }
+    
+    /**
+     * Gets the history of the data values which change every time step.
+     * @return the MetricHistory.
+     */
+    public MetricHistory getHistory()
+    {
+    	return data.getHistory();
+    }
+    
+    /**
+     * Gets the ring the balls' bounces, stops and moves off and on screen are
+     * added to while anyone is subscribed to it. The ring is made the first
+     * time it is asked for, big enough for EVENT_TICKS time steps of events,
+     * and made again if there are more balls and nobody is subscribed.
+     * @return the BallEventRing.
+     */
+    public synchronized BallEventRing getEvents()
+    {
+    	int balls = (pages == null) ? nBalls.getValue() : ballCount;
+    	/* a time step adds at most a bounce, a stop and a screen change for
+    	 * each ball */
+    	int needed = Math.max(2, 3 * balls * EVENT_TICKS);
+    	if (events == null || (events.getCapacity() < needed
+    	                       && !events.hasSubscribers())) {
+    		events = new BallEventRing(Integer.highestOneBit(needed - 1) << 1);
+    	}
+    	return events;
+    }
+    
+    /**
+     * Shows or hides the performance overlay drawn over the running
+     * simulation.
+     * @param isShown true to show the overlay, false to hide it.
+     */
+    public void setHudShown(boolean isShown)
+    {
+    	isHudShown = isShown;
+    }
+    
+    /**
+     * Attaches a SimRecorder, which is then called after every time step.
+     * @param recorder the SimRecorder.
+     */
+    public synchronized void addRecorder(SimRecorder recorder)
+    {
+    	SimRecorder[] added = Arrays.copyOf(recorders, recorders.length + 1);
+    	added[recorders.length] = recorder;
+    	recorders = added;
+    }
+    
+    /**
+     * Detaches a SimRecorder and closes it, waiting for its recording to be
+     * written. A SimRecorder already detached because the balls were
+     * replaced is closed too.
+     * @param recorder the SimRecorder.
+     * @throws IOException if the recording could not be written.
+     */
+    public void removeRecorder(SimRecorder recorder) throws IOException
+    {
+    	synchronized (this) {
+    		SimRecorder[] remaining = without(recorders, recorder);
+    		if (remaining != recorders) {
+    			recorders = remaining;
+    		}
+    		else {
+    			remaining = without(detached, recorder);
+    			if (remaining == detached) {
+    				return;
+    			}
+    			detached = remaining;
+    		}
+    	}
+    	recorder.close();
+    }
+    
+    /**
+     * Gets an array of SimRecorders without one of them.
+     * @param from the array.
+     * @param recorder the SimRecorder to leave out.
+     * @return a new array, or the same array if it did not hold the
+     * SimRecorder.
+     */
+    private static SimRecorder[] without(SimRecorder[] from,
+                                         SimRecorder recorder)
+    {
+    	SimRecorder[] remaining = new SimRecorder[from.length];
+    	int n = 0;
+    	for (SimRecorder r : from) {
+    		if (r != recorder) {
+    			remaining[n++] = r;
+    		}
+    	}
+    	return (n == from.length) ? from : Arrays.copyOf(remaining, n);
+    }
+    
+    /**
+     * Detaches every SimRecorder, as the balls they were made for have been
+     * replaced by a different number of balls. They stay open until they
+     * are removed, so that their owners still get any errors from closing
+     * them.
+     */
+    private void detachRecorders()
+    {
+    	SimRecorder[] all = Arrays.copyOf(detached,
+    	                                  detached.length + recorders.length);
+    	System.arraycopy(recorders, 0, all, detached.length, recorders.length);
+    	detached = all;
+    	recorders = new SimRecorder[0];
+    }
+    
+    /**
+     * Passes the state of the balls at the current time step to the attached
+     * SimRecorders.
+     */
+    private void record()
+    {
+    	for (SimRecorder recorder : recorders) {
+    		recorder.record(data.getSimTime(), pages);
+    	}
+    	if (rewind != null) {
+    		rewind.record(data, pages);
+    	}
+    }
+    
+    /**
+     * Sets the values of a set of Parameters to those of another.
+     * @param from the Parameters to copy the values of.
+     * @param to the Parameters to set, in the same order.
+     */
+    private static void copyValues(Parameter[] from, Parameter[] to)
+    {
+    	for (int i = 0; i < from.length; ++i) {
+    		to[i].setValue(from[i].getValueString());
+    	}
+    }
+    
+    /**
+     * Creates a ball which uses the simulation's parameters.
+     * @param xPos initial horizontal position of the ball.
+     * @param yPos initial vertical position of the ball.
+     * @param xVel initial horizontal speed of the ball.
+     * @param yVel initial vertical speed of the ball.
+     * @return the new Ball.
+     */
+    private Ball newBall(double xPos, double yPos, double xVel, double yVel)
+    {
+    	return new Ball(xPos, yPos, xVel, yVel,
+    	                ballDiameter,
+    	                ballColor,
+    	                gravity,
+    	                ballHyst,
+    	                airRes,
+    	                rollRes,
+    	                rightWind,
+    	                getCanvas(),
+    	                platformPositions,
+    	                data);
+    }
+    
+    /**
+     * Takes a Checkpoint of the current state of the simulation. May be called
+     * while the simulation is running; the Checkpoint is taken between time
+     * steps.
+     * @return the Checkpoint.
+     * @throws IOException if the random number generator cannot be saved.
+     */
+    public synchronized Checkpoint checkpoint() throws IOException
+    {
+    	return new Checkpoint(params, data.getParams(), random, platforms,
+    	                      platformPositions, getBalls());
+    }
+    
+    /**
+     * Puts the simulation into the state held by a Checkpoint, replacing all
+     * of its parameter values, platforms, balls and data. The simulation
+     * should not be running. If the number of balls changes, the attached
+     * SimRecorders are detached, as they were made for the old balls.
+     * @param checkpoint the Checkpoint to restore.
+     * @throws IOException if the random number generator cannot be restored.
+     */
+    public synchronized void restore(Checkpoint checkpoint) throws IOException
+    {
+    	stopTracing();
+    	int before = (pages == null) ? nBalls.getValue() : ballCount;
+    	checkpoint.applyParams(params);
+    	random = checkpoint.createRandom();
+    	platforms = checkpoint.createPlatforms(getCanvas());
+    	platformPositions = checkpoint.getPlatformPositions();
+    	
+    	int n = checkpoint.getNBalls();
+    	if (n != before) {
+    		detachRecorders();
+    	}
+    	allocatePages(n);
+    	for (int i = 0; i < n; ++i) {
+    		Ball ball = newBall(0.0, 0.0, 0.0, 0.0);
+    		checkpoint.restoreBall(i, ball);
+    		setBall(i, ball);
+    	}
+    	checkpoint.applyData(data.getParams());
+    	measureEnergy();
+    	resetRewind();
+    }
+    
+    /**
+     * Keeps the recent history of the simulation in memory so that it can be
+     * rewound. The memory is allocated when the balls are created.
+     * @param maxTicks the greatest number of time steps to keep.
+     * @param budget the number of bytes to keep them in.
+     */
+    public synchronized void enableRewind(int maxTicks, int budget)
+    {
+    	rewindTicks = maxTicks;
+    	rewindBudget = budget;
+    	rewind = null;
+    	resetRewind();
+    }
+    
+    /**
+     * Clears the rewind history, making a new RewindBuffer if the number of
+     * balls has changed, and starts it from the current state.
+     */
+    private void resetRewind()
+    {
+    	if (rewindBudget == 0 || pages == null) {
+    		return;
+    	}
+    	if (rewind == null || rewind.getBallCount() != ballCount) {
+    		rewind = new RewindBuffer(ballCount, rewindBudget, rewindTicks,
+    		                          RewindBuffer.DEFAULT_SNAPSHOT_INTERVAL);
+    	}
+    	rewind.reset(data, pages);
+    }
+    
+    /**
+     * @return the earliest time step which can be rewound to, or -1 if
+     * rewinding is off.
+     */
+    public synchronized int getRewindFirstTick()
+    {
+    	return (rewind == null) ? -1 : rewind.getFirstTick();
+    }
+    
+    /**
+     * @return the latest time step which can be rewound to, or -1 if
+     * rewinding is off.
+     */
+    public synchronized int getRewindLastTick()
+    {
+    	return (rewind == null) ? -1 : rewind.getLastTick();
+    }
+    
+    /**
+     * Puts the simulation back into its state at an earlier time step held in
+     * the rewind history, so that it carries on from there. The simulation
+     * should not be running; use requestRewind() if it is.
+     * @param tick the time step to rewind to.
+     * @throws IllegalArgumentException if the time step is not held.
+     */
+    public synchronized void rewindTo(int tick)
+    {
+    	if (rewind == null) {
+    		throw new IllegalArgumentException("Rewinding is off");
+    	}
+    	for (int p = 0; p < pages.length; ++p) {
+    		ownPage(p);
+    	}
+    	rewind.rewind(tick, data, pages);
+    	Arrays.fill(stoppedYSums, Double.NaN);
+    	measureEnergy();
+    	termination.reset(data);
+    }
+    
+    /**
+     * Requests that the running simulation is rewound to an earlier time step
+     * and redrawn, carrying on from there.
+     * @param tick the time step to rewind to.
+     */
+    public void requestRewind(int tick)
+    {
+    	rewindRequest = tick;
+    }
+    
     /**
      * Draws the platforms in the simulation onto the canvas.
      */
@@ -272,9 +1007,36 @@ public class BallSim implements Runnable
      */
     public void drawBalls()
     {
-    	for (Ball ball : balls) {
-    		ball.draw();
+    	for (Ball[] page : pages) {
+    		for (Ball ball : page) {
+    			ball.draw();
+    		}
+    	}
+    }
+    
+    /**
+     * Erases the canvas and draws the whole simulation onto it again.
+     */
+    public void redraw()
+    {
+    	getCanvas().erase();
+    	drawPlatforms();
+    	BallTracer t = tracer;
+    	if (t != null) {
+    		t.drawAll(getCanvas(), Renderer.TRAIL_COLOR);
     	}
+    	drawBalls();
+    }
+    
+    /**
+     * Requests that the running simulation skips ahead by a number of time
+     * steps, simulating them at full speed without drawing or pausing and then
+     * redrawing the simulation once they are done.
+     * @param nTicks the number of time steps to skip ahead.
+     */
+    public void fastForward(int nTicks)
+    {
+    	fastForwardTicks = nTicks;
     }
     
     /**
@@ -283,6 +1045,8 @@ public class BallSim implements Runnable
     public void stop()
     {
     	isRunning = false;
+    	fastForwardTicks = 0;
+    	rewindRequest = -1;
     }
     
     /**
@@ -294,23 +1058,486 @@ public class BallSim implements Runnable
     }
         
     /**
-     * Run the simulation.
+     * Advances the simulation by one time step without drawing it.
+     */
+    public synchronized void step()
+    {
+    	/* events are only made once Flight Recorder is in use, so that a
+    	 * run without it loads only the FlightRecorder class, and never the
+    	 * event classes or the rest of jdk.jfr */
+    	TickEvent event = null;
+    	if (FlightRecorder.isInitialized()) {
+    		event = new TickEvent();
+    		event.begin();
+    	}
+    	long start = System.nanoTime();
+    	int stopped = data.getStoppedBalls();
+    	int bounces = 0;
+    	boolean isLogged = events != null && events.hasSubscribers();
+    	int height = simHeight.getValue();
+    	double speeds = 0.0;
+    	double heights = 0.0;
+    	double xMom = 0.0;
+    	double yMom = 0.0;
+    	for (int p = 0; p < pages.length; ++p) {
+    		if (!ownsPage[p]) {
+    			if (Double.isNaN(stoppedYSums[p]) && isStopped(pages[p])) {
+    				stoppedYSums[p] = sumYPos(pages[p]);
+    			}
+    			if (!Double.isNaN(stoppedYSums[p])) {
+    				/* stopped balls have no kinetic energy or momentum */
+    				heights += pages[p].length * height - stoppedYSums[p];
+    				continue;
+    			}
+    		}
+    		Ball[] page = ownPage(p);
+    		bounces += stepPage(page, p * PAGE_SIZE, isLogged);
+    		/* the partial sums of each page are added in page order */
+    		speeds += partialSums[0];
+    		heights += page.length * height - partialSums[1];
+    		xMom += partialSums[2];
+    		yMom += partialSums[3];
+    		stoppedYSums[p] = (partialSums[4] == page.length)
+    		                  ? partialSums[1] : Double.NaN;
+    	}
+    	long stepped = System.nanoTime();
+    	lastStepTime = stepped - start;
+    	timer.record(PhaseTimer.STEP, start, stepped);
+    	data.incSimTime();
+    	data.setEnergy(0.5 * speeds, gravity.getValue() * heights, xMom, yMom);
+    	data.recordTick();
+    	record();
+    	timer.record(PhaseTimer.DATA, stepped, System.nanoTime());
+    	if (event != null) {
+    		commitEvents(event, bounces, data.getStoppedBalls() - stopped);
+    	}
+    }
+    
+    /**
+     * Steps the balls in a page, adding up as it goes the sums the energy and
+     * momentum totals are made from, and, if anyone is subscribed, adding
+     * the balls' bounces, stops and moves off and on screen to the event
+     * ring. The sums are left in partialSums: the squared speeds, the
+     * vertical positions, the horizontal and vertical speeds, and the
+     * number of stopped balls.
+     * @param page the page of balls.
+     * @param first the index of the first ball in the page.
+     * @param isLogged whether to add events to the event ring.
+     * @return the number of balls which bounced.
+     */
+    private int stepPage(Ball[] page, int first, boolean isLogged)
+    {
+    	/* events are numbered with the time step they lead to */
+    	int tick = data.getSimTime() + 1;
+    	int bounces = 0;
+    	double speeds = 0.0;
+    	double yPos = 0.0;
+    	double xMom = 0.0;
+    	double yMom = 0.0;
+    	int stopped = 0;
+    	for (int i = 0; i < page.length; ++i) {
+    		Ball ball = page[i];
+    		boolean wasStopped = ball.isStopped();
+    		boolean wasOffScreen = ball.isOffScreen();
+    		boolean hasBounced = ball.step(DELTA_T);
+    		double xVel = ball.getXVel();
+    		double yVel = ball.getYVel();
+    		speeds += xVel * xVel + yVel * yVel;
+    		yPos += ball.getYPos();
+    		xMom += xVel;
+    		yMom += yVel;
+    		if (hasBounced) {
+    			bounces++;
+    		}
+    		if (ball.isStopped()) {
+    			stopped++;
+    		}
+    		if (isLogged) {
+    			logEvents(ball, first + i, tick, hasBounced, wasStopped,
+    			          wasOffScreen);
+    		}
+    	}
+    	partialSums[0] = speeds;
+    	partialSums[1] = yPos;
+    	partialSums[2] = xMom;
+    	partialSums[3] = yMom;
+    	partialSums[4] = stopped;
+    	return bounces;
+    }
+    
+    /**
+     * Adds the events of a ball's latest step to the event ring.
+     * @param ball the Ball.
+     * @param index the index of the ball.
+     * @param tick the time step the step led to.
+     * @param hasBounced whether the ball bounced.
+     * @param wasStopped whether the ball had stopped before the step.
+     * @param wasOffScreen whether the ball was off screen before the step.
+     */
+    private void logEvents(Ball ball, int index, int tick, boolean hasBounced,
+                           boolean wasStopped, boolean wasOffScreen)
+    {
+    	float x = (float) ball.getXPos();
+    	float y = (float) ball.getYPos();
+    	if (hasBounced) {
+    		events.add(tick, index, BallEventRing.BOUNCE, x, y);
+    	}
+    	if (!wasStopped && ball.isStopped()) {
+    		events.add(tick, index, BallEventRing.STOP, x, y);
+    	}
+    	if (wasOffScreen != ball.isOffScreen()) {
+    		events.add(tick, index, wasOffScreen
+    		           ? BallEventRing.ON_SCREEN : BallEventRing.OFF_SCREEN,
+    		           x, y);
+    	}
+    }
+    
+    /**
+     * Adds up the vertical positions of the balls in a page.
+     * @param page the page of balls.
+     * @return the sum of the positions.
+     */
+    private static double sumYPos(Ball[] page)
+    {
+    	double yPos = 0.0;
+    	for (Ball ball : page) {
+    		yPos += ball.getYPos();
+    	}
+    	return yPos;
+    }
+    
+    /**
+     * Works out the energy and momentum totals afresh from every ball, for
+     * when the balls have been replaced rather than stepped.
+     */
+    private void measureEnergy()
+    {
+    	int height = simHeight.getValue();
+    	double speeds = 0.0;
+    	double heights = 0.0;
+    	double xMom = 0.0;
+    	double yMom = 0.0;
+    	for (Ball[] page : pages) {
+    		for (Ball ball : page) {
+    			speeds += ball.getXVel() * ball.getXVel()
+    			          + ball.getYVel() * ball.getYVel();
+    			xMom += ball.getXVel();
+    			yMom += ball.getYVel();
+    		}
+    		heights += page.length * height - sumYPos(page);
+    	}
+    	data.setEnergy(0.5 * speeds, gravity.getValue() * heights, xMom, yMom);
+    }
+    
+    /**
+     * Commits the Flight Recorder events for the time step just taken, if
+     * they are enabled.
+     * @param event the event begun at the start of the time step.
+     * @param bounces the number of balls which bounced.
+     * @param stops the number of balls which stopped.
+     */
+    private void commitEvents(TickEvent event, int bounces, int stops)
+    {
+    	event.end();
+    	if (event.shouldCommit()) {
+    		event.tick = data.getSimTime();
+    		event.stoppedBalls = data.getStoppedBalls();
+    		event.activeBalls = ballCount - event.stoppedBalls;
+    		event.commit();
+    	}
+    	BounceEvent bounceEvent = new BounceEvent();
+    	if (bounceEvent.isEnabled()) {
+    		bounceEvent.tick = data.getSimTime();
+    		bounceEvent.bounces = bounces;
+    		bounceEvent.stops = stops;
+    		bounceEvent.commit();
+    	}
+    }
+    
+    /**
+     * Keeps the current ball positions, before a time step is taken, so that
+     * the Renderer can interpolate between them and the positions after it.
+     */
+    private synchronized void savePrevious()
+    {
+    	if (prevX.length < ballCount) {
+    		prevX = new float[ballCount];
+    		prevY = new float[ballCount];
+    	}
+    	int i = 0;
+    	for (Ball[] page : pages) {
+    		for (Ball ball : page) {
+    			prevX[i] = (float) ball.getXPos();
+    			prevY[i] = (float) ball.getYPos();
+    			i++;
+    		}
+    	}
+    	hasPrevious = true;
+    }
+    
+    /**
+     * Gets the length of a time step in real time at the current simulation
+     * speed.
+     * @return the length in nanoseconds.
+     */
+    private long getTickTime()
+    {
+    	return (long) (DEFAULT_TIME_STEP * 1000000.0 / simSpeed.getValue());
+    }
+    
+    /**
+     * Copies the current state of the simulation into a SimSnapshot and
+     * publishes it for the Renderer to draw. If savePrevious() was called
+     * just before the latest time step, the Renderer interpolates from the
+     * positions it saved.
+     * @param remainder the real time already accumulated towards the next
+     * time step, in nanoseconds.
+     * @param tickTime the length of a time step in nanoseconds.
+     */
+    private synchronized void publishSnapshot(long remainder, long tickTime)
+    {
+    	long start = System.nanoTime();
+    	SimSnapshot s = snapshots.getBack();
+    	s.fillBalls(data.getSimTime(), pages, ballCount);
+    	if (hasPrevious) {
+    		s.fillPrevious(prevX, prevY);
+    		hasPrevious = false;
+    	}
+    	else {
+    		s.interpolate = false;
+    	}
+    	s.publishTime = System.nanoTime();
+    	s.remainder = remainder;
+    	s.tickTime = tickTime;
+    	s.nominalTickTime = (long) (DEFAULT_TIME_STEP * 1000000.0);
+    	s.stepTime = lastStepTime;
+    	s.activeBalls = ballCount - data.getStoppedBalls();
+    	s.showHud = isHudShown;
+    	s.diameter = ballDiameter.getValue();
+    	s.ballColor = ballColor.getValue();
+    	s.platformColor = platColor.getValue();
+    	s.platforms = platforms;
+    	BallTracer t = tracer;
+    	if (t != null) {
+    		t.copyTrails(s);
+    	}
+    	else {
+    		s.trailPoints = 0;
+    	}
+    	snapshots.publish();
+    	timer.record(PhaseTimer.PUBLISH, start, System.nanoTime());
+    }
+    
+    /**
+     * Carries out a requested fast forward, reporting progress to the GUI as
+     * it goes, then publishes the state it reached to be drawn.
+     */
+    private void runFastForward()
+    {
+    	int n = fastForwardTicks;
+    	fastForwardTicks = 0;
+    	long start = System.nanoTime();
+    	long lastReport = start;
+    	
+    	for (int tick = 1; tick <= n && isRunning; ++tick) {
+    		step();
+    		if (termination.isFinished(data, ballCount)) {
+    			isRunning = false;
+    		}
+    		long now = System.nanoTime();
+    		if (now - lastReport >= PROGRESS_INTERVAL) {
+    			double ticksPerSec = tick * 1.0e9 / (now - start);
+    			if (gui != null) {
+    				gui.fastForwardProgress(tick, n, ticksPerSec);
+    			}
+    			lastReport = now;
+    		}
+    	}
+    	
+    	publishSnapshot(0, getTickTime());
+    	if (gui != null) {
+    		gui.fastForwardFinished();
+    	}
+    }
+    
+    /**
+     * Advances the simulation from its current state by up to a number of time
+     * steps without drawing it or pausing between them, stopping early if its
+     * TerminationPolicy finds it finished. This is how a fork is run forward.
+     * @param nTicks the maximum number of time steps to run for.
+     * @return the number of time steps run.
+     */
+    public int runFor(int nTicks)
+    {
+    	beginRun();
+    	return continueFor(nTicks, Long.MAX_VALUE);
+    }
+    
+    /**
+     * Gets the simulation ready to be advanced in slices by continueFor(),
+     * clearing its TerminationPolicy's record of earlier time steps.
+     */
+    public void beginRun()
+    {
+    	termination.reset(data);
+    }
+    
+    /**
+     * Advances the simulation by up to a number of time steps, or for up to a
+     * length of real time, carrying on from where the last call left off. It
+     * stops early if its TerminationPolicy finds it finished, which
+     * getTerminationPolicy().getReason() then tells.
+     * @param nTicks the maximum number of time steps to run for.
+     * @param maxTime the maximum time to run for, in nanoseconds.
+     * @return the number of time steps run.
+     */
+    public int continueFor(int nTicks, long maxTime)
+    {
+    	long start = System.nanoTime();
+    	for (int tick = 1; tick <= nTicks; ++tick) {
+    		step();
+    		if (termination.isFinished(data, ballCount)) {
+    			return tick;
+    		}
+    		if (System.nanoTime() - start >= maxTime) {
+    			return tick;
+    		}
+    	}
+    	return nTicks;
+    }
+    
+    /**
+     * Runs the simulation from its initial state for a fixed number of time
+     * steps without pausing between them. If a ResultCache is given and it
+     * already holds the results for the current parameters, they are loaded
+     * into the DataAnalyser and nothing is simulated; otherwise the results
+     * are added to the cache once the run completes.
+     * @param nTicks the number of time steps to run for.
+     * @param cache the ResultCache to use, or null.
+     * @return true if the results were taken from the cache, false otherwise.
+     */
+    public boolean runTicks(int nTicks, ResultCache cache)
+    {
+    	String key = null;
+    	data.reset();
+    	if (cache != null) {
+    		key = ResultCache.key(params, getSeed(), nTicks, ENGINE_VERSION);
+    		if (cache.get(key, data.getParams())) {
+    			return true;
+    		}
+    	}
+    	
+    	createObjects();
+    	runFor(nTicks);
+    	
+    	if (cache != null) {
+    		cache.put(key, data.getParams());
+    	}
+    	return false;
+    }
+        
+    /**
+     * Run the simulation. Time steps are taken at a fixed rate of real time,
+     * set by the simulation speed: real time is accumulated and as many time
+     * steps are taken as it covers. What is left over is passed to the
+     * Renderer, which uses it to draw the balls part way towards the next
+     * time step, so motion stays smooth whatever the rate of time steps.
+     * Without a GUI the simulation runs in the same way but is not drawn.
      */
     public void run()
     {
     	isRunning = true;
+    	termination.reset(data);
+    	timer.reset();
+    	long lastTiming = System.nanoTime();
+    	/* drawing is done by the renderer's thread, not this one */
+    	Renderer renderer = null;
+    	if (getCanvas() != null) {
+    		renderer = new Renderer(getCanvas(), snapshots,
+    		                        getCanvas().getBackgroundColor(),
+    		                        Renderer.TRAIL_COLOR, frameScheduler,
+    		                        data, timer);
+    		publishSnapshot(0, getTickTime());
+    		renderer.start();
+    	}
+    	long last = System.nanoTime();
+    	long accumulator = 0;
     	/* start the simulation */
     	while(isRunning) {
-    		for (Ball ball : balls) {
-    			ball.move(DELTA_T);
+    		if (fastForwardTicks > 0) {
+    			runFastForward();
+    			last = System.nanoTime();
+    			accumulator = 0;
+    			continue;
+    		}
+    		int tick = rewindRequest;
+    		if (tick >= 0) {
+    			rewindRequest = -1;
+    			try {
+    				rewindTo(tick);
+    			}
+    			catch (IllegalArgumentException e) {
+    				/* the time step has since left the rewind history */
+    			}
+    			publishSnapshot(0, getTickTime());
+    			continue;
+    		}
+    		
+    		long tickTime = getTickTime();
+    		long now = System.nanoTime();
+    		accumulator = Math.min(accumulator + (now - last), MAX_LAG);
+    		last = now;
+    		boolean stepped = false;
+    		while (accumulator >= tickTime && isRunning) {
+    			if (accumulator < 2 * tickTime) {
+    				/* the last time step before the next frame */
+    				savePrevious();
+    			}
+    			step();
+    			stepped = true;
+    			accumulator -= tickTime;
+    			if (termination.isFinished(data, ballCount)) {
+    				isRunning = false;
+    			}
     		}
-    		/* ball drawing is done AFTER move() because of balls erasing other
-    		 * balls in shared space when drawn/erased sequentially */
-    		drawPlatforms();
-    		data.incSimTime();
-    		gui.wait((int) (DEFAULT_TIME_STEP / (simSpeed.getValue())));
+    		if (stepped) {
+    			publishSnapshot(accumulator, tickTime);
+    		}
+    		long sleep = System.nanoTime();
+    		pause((int) Math.max(1, (tickTime - accumulator) / 1000000));
+    		long woken = System.nanoTime();
+    		timer.record(PhaseTimer.SLEEP, sleep, woken);
+    		if (woken - lastTiming >= TIMING_INTERVAL) {
+    			timer.report();
+    			lastTiming = woken;
+    		}
+    	}
+    	if (renderer != null) {
+    		renderer.stop();
+    	}
+    	timer.report();
+    	if (gui != null) {
+    		gui.simFinished();
+    	}
+    }
+    
+    /**
+     * Waits between time steps, through the GUI if there is one.
+     * @param time the time in milliseconds.
+     */
+    private void pause(int time)
+    {
+    	if (gui != null) {
+    		gui.wait(time);
+    		return;
+    	}
+    	try {
+    		Thread.sleep(time);
+    	}
+    	catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		isRunning = false;
     	}
-    	gui.simFinished();
     }
     
 }
\ No newline at end of file
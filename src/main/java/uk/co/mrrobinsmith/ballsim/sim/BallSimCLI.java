@@ -0,0 +1,419 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * BallSimCLI runs a BallSim from the command line, without a GUI, and prints
+ * its final data values. It is meant for running many short simulations
+ * from scripts: it never creates a window and never loads the AWT or Swing
+ * classes, so a run starts as quickly as the JVM does.
+ *
+ * Simulation parameters are given by name, exactly as they are shown in the
+ * parameter panel, e.g. "No. of balls=500". The simulation runs for the
+ * given number of time steps, or until its TerminationPolicy finds it
+ * finished, and then prints one "name=value" line per data value.
+ *
+ * Given --serve, it instead starts a SimServer and waits, so that
+ * simulations can be run and watched over HTTP.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class BallSimCLI
+{
+	private static final int DEFAULT_TICKS = 10000;
+	private static final int CACHE_ENTRIES = 10000;
+	private static final String USAGE =
+		"Usage: BallSimCLI [options] [name=value ...]\n"
+		+ "  -t, --ticks N      run for at most N time steps (default "
+		+ DEFAULT_TICKS + ")\n"
+		+ "  -p, --params FILE  read name=value lines from FILE\n"
+		+ "  -o, --out FILE     write the results to FILE instead of the "
+		+ "standard output\n"
+		+ "  -c, --cache DIR    reuse and store results in a cache in DIR\n"
+		+ "  -x, --export FILE  export the ball positions into the memory-"
+		+ "mapped FILE\n"
+		+ "  -T, --trajectory DIR record every ball at every time step into "
+		+ "segment files in DIR\n"
+		+ "  -H, --history FILE write the history of the data values to FILE "
+		+ "as CSV\n"
+		+ "  -a, --analytics    also print statistics of where and when the "
+		+ "balls stop\n"
+		+ "  -l, --list         list the parameters and their values\n"
+		+ "  -s, --serve PORT   serve the HTTP control server on localhost\n"
+		+ "  -h, --help         show this message\n";
+
+	/**
+	 * Runs a simulation given on the command line.
+	 * @param args the command line arguments.
+	 */
+	public static void main(String[] args)
+	{
+		int status;
+		try {
+			status = run(args);
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println("BallSimCLI: " + e.getMessage());
+			System.err.print(USAGE);
+			status = 2;
+		}
+		catch (IOException e) {
+			System.err.println("BallSimCLI: " + e.getMessage());
+			status = 1;
+		}
+		System.exit(status);
+	}
+
+	/**
+	 * Parses the command line, runs the simulation and writes its results.
+	 * @param args the command line arguments.
+	 * @return the exit status.
+	 * @throws IllegalArgumentException if the arguments are not valid.
+	 * @throws IOException if a file could not be read or written.
+	 */
+	private static int run(String[] args) throws IOException
+	{
+		BallSim sim = new BallSim(null);
+		int nTicks = DEFAULT_TICKS;
+		File out = null;
+		File export = null;
+		File trajectory = null;
+		File history = null;
+		ResultCache cache = null;
+		boolean list = false;
+		boolean analyse = false;
+		int port = -1;
+
+		for (int i = 0; i < args.length; ++i) {
+			String arg = args[i];
+			if (arg.equals("-h") || arg.equals("--help")) {
+				System.out.print(USAGE);
+				return 0;
+			}
+			else if (arg.equals("-a") || arg.equals("--analytics")) {
+				analyse = true;
+			}
+			else if (arg.equals("-l") || arg.equals("--list")) {
+				list = true;
+			}
+			else if (arg.equals("-s") || arg.equals("--serve")) {
+				port = parsePort(optionValue(args, i++));
+			}
+			else if (arg.equals("-t") || arg.equals("--ticks")) {
+				nTicks = parseTicks(optionValue(args, i++));
+			}
+			else if (arg.equals("-p") || arg.equals("--params")) {
+				readParams(sim, new File(optionValue(args, i++)));
+			}
+			else if (arg.equals("-o") || arg.equals("--out")) {
+				out = new File(optionValue(args, i++));
+			}
+			else if (arg.equals("-H") || arg.equals("--history")) {
+				history = new File(optionValue(args, i++));
+			}
+			else if (arg.equals("-x") || arg.equals("--export")) {
+				export = new File(optionValue(args, i++));
+			}
+			else if (arg.equals("-T") || arg.equals("--trajectory")) {
+				trajectory = new File(optionValue(args, i++));
+			}
+			else if (arg.equals("-c") || arg.equals("--cache")) {
+				cache = new ResultCache(new File(optionValue(args, i++)),
+				                        CACHE_ENTRIES);
+			}
+			else if (arg.startsWith("-")) {
+				throw new IllegalArgumentException("unknown option " + arg);
+			}
+			else {
+				setParam(sim, arg);
+			}
+		}
+
+		if (list) {
+			PrintWriter writer = new PrintWriter(System.out);
+			writeParams(sim.getSimParams(), writer);
+			writer.flush();
+			return 0;
+		}
+
+		if (port >= 0) {
+			serve(port);
+			return 0;
+		}
+
+		StateExporter exporter = null;
+		if (export != null) {
+			exporter = sim.startStateExport(export);
+		}
+		StopAnalytics analytics = null;
+		TrajectoryRecorder recorder = null;
+		if (analyse || history != null || trajectory != null) {
+			/* these are not cached, so the run must be simulated */
+			cache = null;
+		}
+		if (analyse) {
+			analytics = sim.startStopAnalytics();
+		}
+		if (trajectory != null) {
+			if (!trajectory.isDirectory() && !trajectory.mkdirs()) {
+				throw new IOException("cannot create " + trajectory);
+			}
+			recorder = sim.startRecording(trajectory, "trajectory");
+		}
+		boolean isCached = sim.runTicks(nTicks, cache);
+		if (exporter != null) {
+			sim.removeRecorder(exporter);
+		}
+		if (recorder != null) {
+			sim.removeRecorder(recorder);
+		}
+
+		PrintWriter writer;
+		if (out == null) {
+			writer = new PrintWriter(new OutputStreamWriter(System.out,
+			                         StandardCharsets.UTF_8));
+		}
+		else {
+			writer = new PrintWriter(new OutputStreamWriter(
+			             new FileOutputStream(out), StandardCharsets.UTF_8));
+		}
+		writeParams(sim.getResults(), writer);
+		if (analytics != null) {
+			sim.removeRecorder(analytics);
+			analytics.report();
+			writeParams(analytics.getParams(), writer);
+			writeLandings(analytics, writer);
+		}
+		if (history != null) {
+			writeHistory(sim, history);
+		}
+		if (recorder != null) {
+			writer.println("Recorded ticks=" + recorder.getRecordedTicks());
+			writer.println("Dropped ticks=" + recorder.getDroppedTicks());
+		}
+		if (!isCached) {
+			writer.println("Finished=" + sim.getTerminationPolicy()
+			                                .getReasonString());
+		}
+		writer.println("Cached=" + isCached);
+		writer.flush();
+		if (writer.checkError()) {
+			throw new IOException("cannot write results"
+			                      + (out == null ? "" : " to " + out));
+		}
+		if (out != null) {
+			writer.close();
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the value following an option.
+	 * @param args the command line arguments.
+	 * @param i the index of the option.
+	 * @return the value.
+	 * @throws IllegalArgumentException if there is no value.
+	 */
+	private static String optionValue(String[] args, int i)
+	{
+		if (i + 1 >= args.length) {
+			throw new IllegalArgumentException(args[i] + " needs a value");
+		}
+		return args[i + 1];
+	}
+
+	/**
+	 * Runs a SimServer until the JVM is shut down.
+	 * @param port the port to listen on, or 0 for any free port.
+	 * @throws IOException if the server could not be started.
+	 */
+	private static void serve(int port) throws IOException
+	{
+		final SimServer server = new SimServer(port);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				server.stop();
+			}
+		});
+		server.start();
+		System.out.println("Serving on http://localhost:" + server.getPort()
+		                   + "/");
+		while (true) {
+			try {
+				Thread.sleep(Long.MAX_VALUE);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Parses a port number.
+	 * @param s the number as a String.
+	 * @return the number.
+	 * @throws IllegalArgumentException if it is not a port number.
+	 */
+	private static int parsePort(String s)
+	{
+		int port;
+		try {
+			port = Integer.parseInt(s.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad port " + s);
+		}
+		if (port < 0 || port > 65535) {
+			throw new IllegalArgumentException("bad port " + s);
+		}
+		return port;
+	}
+
+	/**
+	 * Parses the number of time steps to run for.
+	 * @param s the number as a String.
+	 * @return the number.
+	 * @throws IllegalArgumentException if it is not a positive number.
+	 */
+	private static int parseTicks(String s)
+	{
+		int nTicks;
+		try {
+			nTicks = Integer.parseInt(s.trim());
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException("bad number of ticks " + s);
+		}
+		if (nTicks <= 0) {
+			throw new IllegalArgumentException("bad number of ticks " + s);
+		}
+		return nTicks;
+	}
+
+	/**
+	 * Reads parameter settings from a file, one "name=value" per line.
+	 * Blank lines and lines starting with # are ignored.
+	 * @param sim the simulation to set the parameters of.
+	 * @param file the file.
+	 * @throws IOException if the file could not be read.
+	 */
+	private static void readParams(BallSim sim, File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+		    new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0 && !line.startsWith("#")) {
+					setParam(sim, line);
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Sets a simulation parameter from a "name=value" setting.
+	 * @param sim the simulation.
+	 * @param setting the setting.
+	 * @throws IllegalArgumentException if the setting is not valid.
+	 */
+	private static void setParam(BallSim sim, String setting)
+	{
+		int eq = setting.indexOf('=');
+		if (eq < 0) {
+			throw new IllegalArgumentException("expected name=value, not "
+			                                   + setting);
+		}
+		String name = setting.substring(0, eq).trim();
+		String value = setting.substring(eq + 1).trim();
+		for (Parameter param : sim.getSimParams()) {
+			if (param.getName().equalsIgnoreCase(name)) {
+				try {
+					param.setValue(value);
+				}
+				catch (NumberFormatException e) {
+					throw new IllegalArgumentException("bad value for "
+					                                   + param.getName()
+					                                   + ": " + value);
+				}
+				if (param.getValueString() == null) {
+					throw new IllegalArgumentException("bad value for "
+					                                   + param.getName()
+					                                   + ": " + value);
+				}
+				return;
+			}
+		}
+		throw new IllegalArgumentException("unknown parameter " + name);
+	}
+
+	/**
+	 * Writes the history of the data values as CSV, at the finest level
+	 * which holds all of it.
+	 * @param sim the simulation.
+	 * @param file the file to write to.
+	 * @throws IOException if the file could not be written.
+	 */
+	private static void writeHistory(BallSim sim, File file) throws IOException
+	{
+		MetricHistory history = sim.getHistory();
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+		    new FileOutputStream(file), StandardCharsets.UTF_8));
+		history.writeCsv(writer, history.getFullLevel());
+		writer.close();
+		if (writer.checkError()) {
+			throw new IOException("cannot write history to " + file);
+		}
+	}
+
+	/**
+	 * Writes one "Landings N=counts" line per platform, giving the number of
+	 * balls which stopped in each bin above it, left to right.
+	 * @param analytics the StopAnalytics.
+	 * @param writer the writer to write to.
+	 */
+	private static void writeLandings(StopAnalytics analytics,
+	                                  PrintWriter writer)
+	{
+		for (int p = 0; p < analytics.getPlatformCount(); ++p) {
+			StringBuilder line = new StringBuilder("Landings " + (p + 1) + "=");
+			long[] counts = analytics.getLandings(p);
+			for (int b = 0; b < counts.length; ++b) {
+				if (b > 0) {
+					line.append(',');
+				}
+				line.append(counts[b]);
+			}
+			writer.println(line);
+		}
+	}
+
+	/**
+	 * Writes one "name=value" line per Parameter.
+	 * @param params the Parameters.
+	 * @param writer the writer to write to.
+	 */
+	private static void writeParams(Parameter[] params, PrintWriter writer)
+	{
+		for (Parameter param : params) {
+			writer.println(param.getName() + "=" + param.getValueString());
+		}
+	}
+
+}
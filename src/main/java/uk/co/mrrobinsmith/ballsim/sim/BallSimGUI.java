@@ -9,6 +9,8 @@ import java.io.File;
 import java.io.IOException;
 import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import uk.co.mrrobinsmith.ballsim.base.*;
 import uk.co.mrrobinsmith.ballsim.base.Canvas;
 
@@ -26,6 +28,13 @@ public class BallSimGUI implements SimGUI
     private static final String ICON_IMAGE = "icons/icon.jpg";
     private static final String DATE = "17/11/2010";
     private static final String AUTHOR = "Robin Smith";
+    private static final int DEFAULT_FAST_FORWARD = 50000;
+    private static final int DEFAULT_REWIND = 500;
+    private static final String[] REPLAY_SPEED_NAMES = {"1/4x", "1/2x", "1x",
+                                                        "2x", "4x", "8x",
+                                                        "16x", "64x"};
+    private static final double[] REPLAY_SPEEDS = {0.25, 0.5, 1.0, 2.0, 4.0,
+                                                   8.0, 16.0, 64.0};
     
     //canvas display parameters
     private final Color BG_COLOR = Color.black;
@@ -42,10 +51,24 @@ public class BallSimGUI implements SimGUI
     private JButton runButton;
     private JButton stopButton;
     private JButton resetButton;
+    private JProgressBar progressBar; //shows progress of a fast forward
+    private JCheckBoxMenuItem recordItem;
+    private JCheckBoxMenuItem exportItem;
+    private JCheckBoxMenuItem trailsItem;
+    private JCheckBoxMenuItem hudItem;
+    private JPanel replayPanel; //replay controls
+    private JButton playButton;
+    private JSlider replaySlider;
+    private JComboBox<String> replaySpeedBox;
+    private JLabel replayTickLabel;
+    private boolean isUpdatingSlider = false;
     
     //simulation objects
     private BallSim sim;
     private Thread simThread; //separate thread for the simulation
+    private RecordingWriter replayWriter; //records the simulation for replay
+    private StateExporter stateExporter; //exports the positions to a file
+    private ReplayPlayer replay; //plays a recording back, or null
 	
     /**
      * Constructor for BallSimGUI. Makes the buttons of the simulation view, the
@@ -54,7 +77,10 @@ public class BallSimGUI implements SimGUI
     public BallSimGUI()
     {
     	sim = new BallSim(this);
+    	sim.enableRewind(RewindBuffer.DEFAULT_MAX_TICKS,
+    	                 RewindBuffer.DEFAULT_BUDGET);
         makeSimButtons();
+        makeReplayControls();
     	makeMainFrame();
     	makeParamFrame();
     	makeDataFrame();
@@ -127,6 +153,7 @@ public class BallSimGUI implements SimGUI
         
         makeFileMenu();
         makeViewMenu();
+        makeSimulationMenu();
         makeHelpMenu();
     }
     
@@ -139,7 +166,51 @@ public class BallSimGUI implements SimGUI
         JMenu menu = new JMenu("File");
         menuBar.add(menu);
 
-        JMenuItem item = new JMenuItem("Quit");
+        JMenuItem item = new JMenuItem("Save checkpoint ...");
+        item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
+                                                   SHORTCUT_MASK));
+        item.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { saveCheckpoint(); }
+        	});
+        menu.add(item);
+        
+        item = new JMenuItem("Load checkpoint ...");
+        item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O,
+                                                   SHORTCUT_MASK));
+        item.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { loadCheckpoint(); }
+        	});
+        menu.add(item);
+        menu.addSeparator();
+        
+        recordItem = new JCheckBoxMenuItem("Record replay ...");
+        recordItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_R,
+                                                         SHORTCUT_MASK));
+        recordItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+        			toggleReplayRecording();
+        		}
+        	});
+        menu.add(recordItem);
+        
+        exportItem = new JCheckBoxMenuItem("Export state ...");
+        exportItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+        			toggleStateExport();
+        		}
+        	});
+        menu.add(exportItem);
+        
+        item = new JMenuItem("Open replay ...");
+        item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P,
+                                                   SHORTCUT_MASK));
+        item.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { openReplay(); }
+        	});
+        menu.add(item);
+        menu.addSeparator();
+        
+        item = new JMenuItem("Quit");
         item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Q,
                                                    SHORTCUT_MASK));
         item.addActionListener(new ActionListener() {
@@ -182,6 +253,51 @@ public class BallSimGUI implements SimGUI
         	public void actionPerformed(ActionEvent e) { showDataFrame(); }
         	});
         menu.add(item);
+        menu.addSeparator();
+        
+        trailsItem = new JCheckBoxMenuItem("Trails");
+        trailsItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_T,
+                                                         SHORTCUT_MASK));
+        trailsItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { updateTrails(); }
+        	});
+        menu.add(trailsItem);
+        
+        hudItem = new JCheckBoxMenuItem("Performance overlay");
+        hudItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H,
+                                                      SHORTCUT_MASK));
+        hudItem.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) {
+        		sim.setHudShown(hudItem.isSelected());
+        	}
+        	});
+        menu.add(hudItem);
+    }
+    
+    /**
+     * Makes the 'Simulation' menu for the main frame's menubar.
+     */
+    private void makeSimulationMenu()
+    {
+    	JMenuBar menuBar = mainFrame.getJMenuBar();
+        JMenu menu = new JMenu("Simulation");
+        menuBar.add(menu);
+        
+        JMenuItem item = new JMenuItem("Fast forward ...");
+        item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F,
+                                                   SHORTCUT_MASK));
+        item.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { fastForward(); }
+        	});
+        menu.add(item);
+        
+        item = new JMenuItem("Rewind ...");
+        item.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z,
+                                                   SHORTCUT_MASK));
+        item.addActionListener(new ActionListener() {
+        	public void actionPerformed(ActionEvent e) { rewind(); }
+        	});
+        menu.add(item);
     }
     
     /**
@@ -219,6 +335,50 @@ public class BallSimGUI implements SimGUI
     	resetButton.addActionListener(new ActionListener() { 
     		public void actionPerformed(ActionEvent e) { resetGUI(); }
          	});    	
+    	
+    	progressBar = new JProgressBar();
+    	progressBar.setStringPainted(true);
+    }
+    
+    /**
+     * Makes the controls shown below the canvas while replaying a recording.
+     */
+    private void makeReplayControls()
+    {
+    	playButton = new JButton("Play");
+    	playButton.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) { togglePlay(); }
+    		});
+    	
+    	replaySlider = new JSlider(0, 0);
+    	replaySlider.addChangeListener(new ChangeListener() {
+    		public void stateChanged(ChangeEvent e) {
+    				if (!isUpdatingSlider && replay != null) {
+    					replay.seek(replaySlider.getValue());
+    				}
+    			}
+    		});
+    	
+    	replaySpeedBox = new JComboBox<String>(REPLAY_SPEED_NAMES);
+    	replaySpeedBox.setSelectedIndex(2);
+    	replaySpeedBox.addActionListener(new ActionListener() {
+    		public void actionPerformed(ActionEvent e) {
+    				if (replay != null) {
+    					replay.setSpeed(
+    					    REPLAY_SPEEDS[replaySpeedBox.getSelectedIndex()]);
+    				}
+    			}
+    		});
+    	
+    	replayTickLabel = new JLabel();
+    	
+    	replayPanel = new JPanel(new BorderLayout());
+    	replayPanel.add(playButton, BorderLayout.WEST);
+    	replayPanel.add(replaySlider, BorderLayout.CENTER);
+    	JPanel eastPanel = new JPanel();
+    	eastPanel.add(replayTickLabel);
+    	eastPanel.add(replaySpeedBox);
+    	replayPanel.add(eastPanel, BorderLayout.EAST);
     }
     
     /**
@@ -269,13 +429,17 @@ public class BallSimGUI implements SimGUI
     }
     
     /**
-     * Displays the window showing the simulation data.
+     * Displays the window showing the simulation data, with live charts of
+     * the history of the values which change every time step.
      */
     private void showDataFrame()
     {
     	DataParamPanel dataPanel = new DataParamPanel(sim.getDataParams());
+    	HistoryChartPanel chartPanel = new HistoryChartPanel(sim.getHistory(),
+    	    dataPanel.getPreferredSize().width);
     	dataFrame.getContentPane().removeAll();
-    	dataFrame.add(dataPanel);
+    	dataFrame.add(dataPanel, BorderLayout.CENTER);
+    	dataFrame.add(chartPanel, BorderLayout.SOUTH);
     	dataFrame.pack();
     	dataFrame.setVisible(true);
         FramePosition.positionFrame(dataFrame, FramePosition.CENTER);
@@ -304,6 +468,20 @@ public class BallSimGUI implements SimGUI
      */
     public void showSimView()
     {
+    	showSimView(null);
+    }
+    
+    /**
+     * Shows the simulation view ready for the simulation to begin, either
+     * with newly created simulation objects or with the state held in a
+     * Checkpoint.
+     * @param checkpoint the Checkpoint to restore, or null to start afresh.
+     */
+    private void showSimView(Checkpoint checkpoint)
+    {
+    	stopReplayRecording();
+    	stopStateExport();
+    	closeReplay();
     	canvas = new Canvas(sim.getSimWidth(), sim.getSimHeight(), BG_COLOR);
     	mainFrame.setVisible(false);
     	mainFrame.getContentPane().removeAll();
@@ -313,10 +491,24 @@ public class BallSimGUI implements SimGUI
         mainFrame.pack();
         canvas.setVisible(true);
         
-        sim.createObjects();
+        if (checkpoint == null) {
+        	sim.createObjects();
+        }
+        else {
+        	try {
+        		sim.restore(checkpoint);
+        	}
+        	catch (IOException e) {
+        		showError("Cannot restore checkpoint: " + e.getMessage());
+        		sim.createObjects();
+        	}
+        }
         sim.drawPlatforms();
         sim.drawBalls();
         drawStartMessage();
+        if (trailsItem.isSelected()) {
+        	updateTrails();
+        }
 
         FramePosition.positionFrame(mainFrame, FramePosition.CENTER);
         mainFrame.setTitle("BallSim");
@@ -384,6 +576,448 @@ public class BallSimGUI implements SimGUI
     	mainFrame.repaint();
     }
     
+    /**
+     * Asks the user for a number of time steps and fast forwards the
+     * simulation by that many, starting it if it has not been started yet.
+     */
+    private void fastForward()
+    {
+    	boolean isReady = (runButton.getParent() == contentPane);
+    	if (!isReady && !sim.isRunning()) {
+    		return;
+    	}
+    	
+    	String s = JOptionPane.showInputDialog(mainFrame,
+    	                                       "Number of time steps:",
+    	                                       DEFAULT_FAST_FORWARD);
+    	if (s == null) {
+    		return;
+    	}
+    	int nTicks;
+    	try {
+    		nTicks = Integer.parseInt(s.trim());
+    	}
+    	catch (NumberFormatException e) {
+    		return;
+    	}
+    	if (nTicks <= 0) {
+    		return;
+    	}
+    	
+    	sim.fastForward(nTicks);
+    	progressBar.setMaximum(nTicks);
+    	progressBar.setValue(0);
+    	progressBar.setString("Fast forwarding");
+    	contentPane.add(progressBar, BorderLayout.SOUTH);
+    	mainFrame.pack();
+    	if (isReady) {
+    		runSim();
+    	}
+    }
+    
+    /**
+     * Starts or stops drawing the trails of a sample of the balls, following
+     * the state of the 'Trails' menu item.
+     */
+    private void updateTrails()
+    {
+    	if (trailsItem.isSelected() && canvas != null && replay == null) {
+    		sim.startTracing(BallTracer.DEFAULT_SAMPLE_SIZE,
+    		                 BallTracer.DEFAULT_TRAIL_LENGTH);
+    	}
+    	else {
+    		sim.stopTracing();
+    		/* a running simulation is redrawn every frame anyway */
+    		if (canvas != null && replay == null && !sim.isRunning()) {
+    			sim.redraw();
+    		}
+    	}
+    }
+    
+    /**
+     * Asks the user for an earlier time step within the rewind history and
+     * puts the simulation back to it. A running simulation carries on from
+     * there; a stopped one can be run again from there. A replay being
+     * recorded is finished first, as a recording cannot go back in time.
+     */
+    private void rewind()
+    {
+    	if (canvas == null || replay != null) {
+    		return;
+    	}
+    	int first = sim.getRewindFirstTick();
+    	int last = sim.getRewindLastTick();
+    	if (last <= first) {
+    		return;
+    	}
+    	
+    	String s = JOptionPane.showInputDialog(mainFrame,
+    	                                       "Rewind to time step (" + first
+    	                                       + " - " + last + "):",
+    	                                       Math.max(first,
+    	                                                last - DEFAULT_REWIND));
+    	if (s == null) {
+    		return;
+    	}
+    	int tick;
+    	try {
+    		tick = Integer.parseInt(s.trim());
+    	}
+    	catch (NumberFormatException e) {
+    		return;
+    	}
+    	
+    	stopReplayRecording();
+    	if (sim.isRunning()) {
+    		sim.requestRewind(tick);
+    		return;
+    	}
+    	try {
+    		sim.rewindTo(tick);
+    	}
+    	catch (IllegalArgumentException e) {
+    		showError(e.getMessage());
+    		return;
+    	}
+    	sim.redraw();
+    	if (resetButton.getParent() == contentPane) {
+    		contentPane.remove(resetButton);
+    		contentPane.add(runButton, BorderLayout.NORTH);
+    		mainFrame.pack();
+    		mainFrame.repaint();
+    	}
+    }
+    
+    /**
+     * Shows the progress of a fast forward. May be called from any thread.
+     * @param done the number of time steps simulated so far.
+     * @param total the total number of time steps to simulate.
+     * @param ticksPerSec the number of time steps being simulated per second.
+     */
+    public void fastForwardProgress(final int done, final int total,
+                                    final double ticksPerSec)
+    {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			progressBar.setValue(done);
+    			progressBar.setString(done + " / " + total + " ("
+    			                      + (int) ticksPerSec + " steps/s)");
+    		}
+    	});
+    }
+    
+    /**
+     * Removes the fast forward progress display. May be called from any
+     * thread.
+     */
+    public void fastForwardFinished()
+    {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			contentPane.remove(progressBar);
+    			mainFrame.pack();
+    			mainFrame.repaint();
+    		}
+    	});
+    }
+    
+    /**
+     * Asks the user for a file and saves a Checkpoint of the simulation to it.
+     */
+    private void saveCheckpoint()
+    {
+    	if (canvas == null || replay != null) {
+    		return;
+    	}
+    	JFileChooser chooser = new JFileChooser();
+    	if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+    		return;
+    	}
+    	try {
+    		sim.checkpoint().write(chooser.getSelectedFile());
+    	}
+    	catch (IOException e) {
+    		showError("Cannot save checkpoint: " + e.getMessage());
+    	}
+    }
+    
+    /**
+     * Asks the user for a checkpoint file, stops the simulation and shows the
+     * simulation view in the state held by the checkpoint.
+     */
+    private void loadCheckpoint()
+    {
+    	JFileChooser chooser = new JFileChooser();
+    	if (chooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+    		return;
+    	}
+    	Checkpoint checkpoint;
+    	try {
+    		checkpoint = Checkpoint.read(chooser.getSelectedFile());
+    	}
+    	catch (IOException e) {
+    		showError("Cannot load checkpoint: " + e.getMessage());
+    		return;
+    	}
+    	
+    	stopSimThread();
+    	/* the simulation size must be known before the canvas is made */
+    	checkpoint.applyParams(sim.getSimParams());
+    	showSimView(checkpoint);
+    }
+    
+    /**
+     * Stops the simulation, if it is running, and waits for its thread to
+     * finish.
+     */
+    private void stopSimThread()
+    {
+    	if (sim.isRunning()) {
+    		sim.stop();
+    		try {
+    			simThread.join();
+    		}
+    		catch (InterruptedException e) {
+    			Thread.currentThread().interrupt();
+    		}
+    	}
+    }
+    
+    /**
+     * Starts or stops recording the simulation for replay, following the
+     * state of the 'Record replay' menu item. Recording starts from the
+     * current time step and asks the user for a file to record into.
+     */
+    private void toggleReplayRecording()
+    {
+    	if (!recordItem.isSelected()) {
+    		stopReplayRecording();
+    		return;
+    	}
+    	recordItem.setSelected(false);
+    	if (canvas == null || replay != null) {
+    		return;
+    	}
+    	JFileChooser chooser = new JFileChooser();
+    	if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+    		return;
+    	}
+    	try {
+    		replayWriter = sim.startReplayRecording(chooser.getSelectedFile());
+    		recordItem.setSelected(true);
+    	}
+    	catch (IOException e) {
+    		showError("Cannot record replay: " + e.getMessage());
+    	}
+    }
+    
+    /**
+     * Stops recording the simulation for replay, if it is being recorded,
+     * and finishes the recording file.
+     */
+    private void stopReplayRecording()
+    {
+    	if (replayWriter == null) {
+    		return;
+    	}
+    	try {
+    		sim.removeRecorder(replayWriter);
+    	}
+    	catch (IOException e) {
+    		showError("Cannot finish recording: " + e.getMessage());
+    	}
+    	replayWriter = null;
+    	recordItem.setSelected(false);
+    }
+    
+    /**
+     * Starts or stops exporting the ball positions for programs outside the
+     * JVM, following the state of the 'Export state' menu item. It asks the
+     * user for a file to export into.
+     */
+    private void toggleStateExport()
+    {
+    	if (!exportItem.isSelected()) {
+    		stopStateExport();
+    		return;
+    	}
+    	exportItem.setSelected(false);
+    	if (canvas == null || replay != null) {
+    		return;
+    	}
+    	JFileChooser chooser = new JFileChooser();
+    	if (chooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+    		return;
+    	}
+    	try {
+    		stateExporter = sim.startStateExport(chooser.getSelectedFile());
+    		exportItem.setSelected(true);
+    	}
+    	catch (IOException e) {
+    		showError("Cannot export state: " + e.getMessage());
+    	}
+    }
+    
+    /**
+     * Stops exporting the ball positions, if they are being exported, and
+     * closes the export file.
+     */
+    private void stopStateExport()
+    {
+    	if (stateExporter == null) {
+    		return;
+    	}
+    	try {
+    		sim.removeRecorder(stateExporter);
+    	}
+    	catch (IOException e) {
+    		showError("Cannot close export file: " + e.getMessage());
+    	}
+    	stateExporter = null;
+    	exportItem.setSelected(false);
+    }
+    
+    /**
+     * Asks the user for a recording file, stops the simulation and shows the
+     * replay view for the recording.
+     */
+    private void openReplay()
+    {
+    	JFileChooser chooser = new JFileChooser();
+    	if (chooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION) {
+    		return;
+    	}
+    	Recording recording;
+    	try {
+    		recording = new Recording(chooser.getSelectedFile());
+    	}
+    	catch (IOException e) {
+    		showError("Cannot open replay: " + e.getMessage());
+    		return;
+    	}
+    	
+    	stopSimThread();
+    	stopReplayRecording();
+    	stopStateExport();
+    	closeReplay();
+    	showReplayView(recording);
+    }
+    
+    /**
+     * Shows the replay view, which draws a recording onto the canvas without
+     * simulating it and lets the user play, pause and seek through it.
+     * @param recording the Recording to replay.
+     */
+    private void showReplayView(Recording recording)
+    {
+    	paramFrame.setVisible(false);
+    	dataFrame.setVisible(false);
+    	canvas = new Canvas(recording.getSimWidth(), recording.getSimHeight(),
+    	                    BG_COLOR);
+    	mainFrame.setVisible(false);
+    	mainFrame.getContentPane().removeAll();
+    	mainFrame.setLayout(new BorderLayout());
+    	contentPane.add(canvas.getCanvasPane(), BorderLayout.CENTER);
+    	contentPane.add(resetButton, BorderLayout.NORTH);
+    	contentPane.add(replayPanel, BorderLayout.SOUTH);
+    	
+    	isUpdatingSlider = true;
+    	replaySlider.setMinimum(recording.getFirstTick());
+    	replaySlider.setMaximum(recording.getLastTick());
+    	replaySlider.setValue(recording.getFirstTick());
+    	isUpdatingSlider = false;
+    	playButton.setText("Play");
+    	replayTickLabel.setText(recording.getFirstTick() + " / "
+    	                        + recording.getLastTick());
+    	mainFrame.pack();
+    	canvas.setVisible(true);
+    	
+    	replay = new ReplayPlayer(recording, canvas, this);
+    	replay.setSpeed(REPLAY_SPEEDS[replaySpeedBox.getSelectedIndex()]);
+    	
+    	FramePosition.positionFrame(mainFrame, FramePosition.CENTER);
+    	mainFrame.setTitle("BallSim replay");
+    	mainFrame.setVisible(true);
+    }
+    
+    /**
+     * Plays or pauses the replay.
+     */
+    private void togglePlay()
+    {
+    	if (replay == null) {
+    		return;
+    	}
+    	if (replay.isPlaying()) {
+    		replay.pause();
+    		playButton.setText("Play");
+    	}
+    	else {
+    		replay.play();
+    		playButton.setText("Pause");
+    	}
+    }
+    
+    /**
+     * Shows the time step the replay has reached. May be called from any
+     * thread.
+     * @param tick the time step being shown.
+     */
+    public void replayProgress(final int tick)
+    {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() {
+    			if (replay == null) {
+    				return;
+    			}
+    			if (!replaySlider.getValueIsAdjusting()) {
+    				isUpdatingSlider = true;
+    				replaySlider.setValue(tick);
+    				isUpdatingSlider = false;
+    			}
+    			replayTickLabel.setText(tick + " / " + replay.getLastTick());
+    		}
+    	});
+    }
+    
+    /**
+     * Makes changes to the GUI relevant to the replay reaching its end. May
+     * be called from any thread.
+     */
+    public void replayFinished()
+    {
+    	SwingUtilities.invokeLater(new Runnable() {
+    		public void run() { playButton.setText("Play"); }
+    	});
+    }
+    
+    /**
+     * Stops the replay, if one is being shown, and closes its recording.
+     */
+    private void closeReplay()
+    {
+    	if (replay == null) {
+    		return;
+    	}
+    	try {
+    		replay.close();
+    	}
+    	catch (IOException e) {
+    		showError("Cannot read replay: " + e.getMessage());
+    	}
+    	replay = null;
+    }
+    
+    /**
+     * Displays an error message.
+     * @param message the message.
+     */
+    private void showError(String message)
+    {
+    	JOptionPane.showMessageDialog(mainFrame, message, "BallSim",
+    	                              JOptionPane.ERROR_MESSAGE);
+    }
+    
     /**
      * Resets the GUI to the setup window.
      */
@@ -392,6 +1026,9 @@ public class BallSimGUI implements SimGUI
     	if (sim.isRunning()) {
     		sim.stop();
     	}
+    	stopReplayRecording();
+    	stopStateExport();
+    	closeReplay();
     	sim.resetData();
     	showSetupView();
     }
@@ -0,0 +1,164 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+import java.util.Random;
+
+import uk.co.mrrobinsmith.ballsim.base.Canvas;
+
+/**
+ * BallTracer follows a small sample of the balls in a simulation and keeps
+ * the most recent part of each one's path, so that the paths can be drawn as
+ * trails over the simulation.
+ *
+ * The balls are chosen when the tracer is made by reservoir sampling, which
+ * gives every ball the same chance of being traced in a single pass. Each
+ * path is kept in a fixed-size ring of float positions, so recording a time
+ * step takes time proportional to the number of traced balls, however many
+ * balls there are, and allocates nothing.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class BallTracer implements SimRecorder
+{
+	public static final int DEFAULT_SAMPLE_SIZE = 8;
+	public static final int DEFAULT_TRAIL_LENGTH = 200;
+
+	private final int[] pageIndex;
+	private final int[] slotIndex;
+	private final int nTraced;
+	/* the number of points kept for each ball; trail k occupies
+	 * [k * capacity, (k + 1) * capacity) */
+	private final int capacity;
+	private final float[] x;
+	private final float[] y;
+	/* the ring position of the newest point, shared by all trails */
+	private int newest = -1;
+	private int nPoints = 0;
+	private int lastTick;
+
+	/**
+	 * Creates a BallTracer following a random sample of the balls.
+	 * @param nBalls the number of balls in the simulation.
+	 * @param pageSize the number of balls in each page.
+	 * @param sampleSize the number of balls to trace.
+	 * @param trailLength the number of points kept for each ball.
+	 * @param seed the seed for choosing the balls.
+	 */
+	public BallTracer(int nBalls, int pageSize, int sampleSize,
+	                  int trailLength, long seed)
+	{
+		capacity = trailLength;
+		nTraced = Math.min(sampleSize, nBalls);
+		int[] sample = new int[nTraced];
+		Random random = new Random(seed);
+		for (int i = 0; i < nBalls; ++i) {
+			if (i < nTraced) {
+				sample[i] = i;
+			}
+			else {
+				int j = random.nextInt(i + 1);
+				if (j < nTraced) {
+					sample[j] = i;
+				}
+			}
+		}
+		pageIndex = new int[nTraced];
+		slotIndex = new int[nTraced];
+		for (int k = 0; k < nTraced; ++k) {
+			pageIndex[k] = sample[k] / pageSize;
+			slotIndex[k] = sample[k] % pageSize;
+		}
+		x = new float[nTraced * capacity];
+		y = new float[nTraced * capacity];
+	}
+
+	/**
+	 * Gets the number of balls being traced.
+	 * @return the number of balls.
+	 */
+	public int getTracedCount()
+	{
+		return nTraced;
+	}
+
+	/**
+	 * Adds the positions of the traced balls at a time step to their trails.
+	 * If the time steps are not consecutive, e.g. because the simulation has
+	 * been rewound, the trails are started again.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 */
+	public void record(int tick, Ball[][] pages)
+	{
+		if (nPoints > 0 && tick != lastTick + 1) {
+			nPoints = 0;
+		}
+		newest = (newest + 1) % capacity;
+		for (int k = 0; k < nTraced; ++k) {
+			Ball ball = pages[pageIndex[k]][slotIndex[k]];
+			x[k * capacity + newest] = (float) ball.getXPos();
+			y[k * capacity + newest] = (float) ball.getYPos();
+		}
+		if (nPoints < capacity) {
+			nPoints++;
+		}
+		lastTick = tick;
+	}
+
+	/**
+	 * Copies the trails into a snapshot, to be drawn by the Renderer.
+	 * @param snapshot the SimSnapshot.
+	 */
+	void copyTrails(SimSnapshot snapshot)
+	{
+		snapshot.ensureTrailCapacity(nTraced, capacity);
+		System.arraycopy(x, 0, snapshot.trailX, 0, x.length);
+		System.arraycopy(y, 0, snapshot.trailY, 0, y.length);
+		snapshot.trailNewest = newest;
+		snapshot.trailPoints = nPoints;
+	}
+
+	/**
+	 * Draws the whole of each trail.
+	 * @param canvas the canvas to draw onto.
+	 * @param color the colour of the trails.
+	 */
+	public void drawAll(Canvas canvas, Color color)
+	{
+		if (nPoints < 2) {
+			return;
+		}
+		canvas.setForegroundColor(color);
+		int oldest = (newest + capacity - nPoints + 1) % capacity;
+		drawSegments(canvas, oldest, nPoints - 1);
+	}
+
+	/**
+	 * Nothing needs closing; the trails are only held in memory.
+	 */
+	public void close()
+	{
+	}
+
+	/**
+	 * Draws a run of segments of every trail.
+	 * @param from the ring position of the start of the first segment.
+	 * @param n the number of segments.
+	 */
+	private void drawSegments(Canvas canvas, int from, int n)
+	{
+		for (int k = 0; k < nTraced; ++k) {
+			int base = k * capacity;
+			int a = from;
+			for (int s = 0; s < n; ++s) {
+				int b = (a + 1) % capacity;
+				canvas.drawLine((int) x[base + a], (int) y[base + a],
+				                (int) x[base + b], (int) y[base + b]);
+				a = b;
+			}
+		}
+	}
+
+}
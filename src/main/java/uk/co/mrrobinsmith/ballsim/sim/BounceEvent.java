@@ -0,0 +1,34 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * BounceEvent is a Java Flight Recorder event summarising the bounces and
+ * stops of all the balls in one time step. A single event per time step
+ * keeps recordings small however many balls there are.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+@Name("uk.co.mrrobinsmith.ballsim.Bounces")
+@Label("Bounces")
+@Category("BallSim")
+@StackTrace(false)
+@Description("Balls which bounced or stopped in one time step")
+class BounceEvent extends Event
+{
+	@Label("Tick")
+	int tick;
+
+	@Label("Bounces")
+	int bounces;
+
+	@Label("Stops")
+	int stops;
+}
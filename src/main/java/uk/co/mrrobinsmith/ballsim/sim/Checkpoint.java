@@ -0,0 +1,390 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+import uk.co.mrrobinsmith.ballsim.base.Canvas;
+
+/**
+ * Checkpoint holds the complete state of a BallSim at one time step: the
+ * parameter values, the platform geometry, the state of every ball, the
+ * random number generator and the DataAnalyser values. A Checkpoint can be
+ * written to and read from a compact, versioned binary file so that a
+ * simulation can be resumed later exactly where it left off.
+ *
+ * The file is written through a buffered stream to a temporary file which
+ * then replaces the target, so a crash while saving never leaves a partly
+ * written checkpoint behind.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class Checkpoint
+{
+	/* "BSCK" */
+	private static final int MAGIC = 0x4253434b;
+	private static final int FORMAT_VERSION = 1;
+
+	private String[] paramNames;
+	private String[] paramValues;
+	private String[] dataNames;
+	private String[] dataValues;
+	/* the serialized random number generator */
+	private byte[] randomState;
+
+	private int[] platX;
+	private int[] platY;
+	private int[] platLength;
+	private int[] platformPositions;
+
+	private double[] xPos;
+	private double[] yPos;
+	private double[] xVel;
+	private double[] yVel;
+	private byte[] flags;
+
+	/**
+	 * Creates an empty Checkpoint, to be filled by read().
+	 */
+	private Checkpoint()
+	{
+	}
+
+	/**
+	 * Creates a Checkpoint holding a copy of the current state of the
+	 * simulation. Used by BallSim.checkpoint().
+	 * @param params the simulation parameters.
+	 * @param data the simulation's data parameters.
+	 * @param random the random number generator of the simulation.
+	 * @param platforms the platforms of the simulation.
+	 * @param platformPositions the platform heights as a function of x.
+	 * @param balls the balls of the simulation.
+	 */
+	Checkpoint(Parameter[] params, Parameter[] data, Random random,
+	           Platform[] platforms, int[] platformPositions, Ball[] balls)
+	           throws IOException
+	{
+		paramNames = new String[params.length];
+		paramValues = new String[params.length];
+		for (int i = 0; i < params.length; ++i) {
+			paramNames[i] = params[i].getName();
+			paramValues[i] = params[i].getValueString();
+		}
+
+		dataNames = new String[data.length];
+		dataValues = new String[data.length];
+		for (int i = 0; i < data.length; ++i) {
+			dataNames[i] = data[i].getName();
+			dataValues[i] = data[i].getValueString();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(random);
+		out.close();
+		randomState = bytes.toByteArray();
+
+		int n = platforms.length;
+		platX = new int[n];
+		platY = new int[n];
+		platLength = new int[n];
+		for (int i = 0; i < n; ++i) {
+			platX[i] = platforms[i].getX();
+			platY[i] = platforms[i].getY();
+			platLength[i] = platforms[i].getLength();
+		}
+		this.platformPositions = platformPositions.clone();
+
+		n = balls.length;
+		xPos = new double[n];
+		yPos = new double[n];
+		xVel = new double[n];
+		yVel = new double[n];
+		flags = new byte[n];
+		for (int i = 0; i < n; ++i) {
+			xPos[i] = balls[i].getXPos();
+			yPos[i] = balls[i].getYPos();
+			xVel[i] = balls[i].getXVel();
+			yVel[i] = balls[i].getYVel();
+			flags[i] = (byte) balls[i].getFlags();
+		}
+	}
+
+	/**
+	 * Reads a Checkpoint from a file.
+	 * @param file the checkpoint file.
+	 * @return the Checkpoint.
+	 * @throws IOException if the file cannot be read or is not a checkpoint.
+	 */
+	public static Checkpoint read(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+		                                         new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a BallSim checkpoint");
+			}
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported checkpoint version "
+				                      + version);
+			}
+			if (in.readInt() != BallSim.ENGINE_VERSION) {
+				throw new IOException("Checkpoint was saved by a different "
+				                      + "version of the simulation");
+			}
+
+			Checkpoint cp = new Checkpoint();
+			int n = in.readInt();
+			cp.paramNames = new String[n];
+			cp.paramValues = new String[n];
+			for (int i = 0; i < n; ++i) {
+				cp.paramNames[i] = in.readUTF();
+				cp.paramValues[i] = in.readUTF();
+			}
+
+			n = in.readInt();
+			cp.dataNames = new String[n];
+			cp.dataValues = new String[n];
+			for (int i = 0; i < n; ++i) {
+				cp.dataNames[i] = in.readUTF();
+				cp.dataValues[i] = in.readUTF();
+			}
+
+			cp.randomState = new byte[in.readInt()];
+			in.readFully(cp.randomState);
+
+			n = in.readInt();
+			cp.platX = new int[n];
+			cp.platY = new int[n];
+			cp.platLength = new int[n];
+			for (int i = 0; i < n; ++i) {
+				cp.platX[i] = in.readInt();
+				cp.platY[i] = in.readInt();
+				cp.platLength[i] = in.readInt();
+			}
+
+			/* platform heights are stored as runs of equal values */
+			cp.platformPositions = new int[in.readInt()];
+			int j = 0;
+			while (j < cp.platformPositions.length) {
+				int value = in.readInt();
+				int run = in.readInt();
+				if (run <= 0 || j + run > cp.platformPositions.length) {
+					throw new IOException("Corrupt platform positions");
+				}
+				for (int end = j + run; j < end; ++j) {
+					cp.platformPositions[j] = value;
+				}
+			}
+
+			n = in.readInt();
+			cp.xPos = new double[n];
+			cp.yPos = new double[n];
+			cp.xVel = new double[n];
+			cp.yVel = new double[n];
+			cp.flags = new byte[n];
+			for (int i = 0; i < n; ++i) {
+				cp.xPos[i] = in.readDouble();
+				cp.yPos[i] = in.readDouble();
+				cp.xVel[i] = in.readDouble();
+				cp.yVel[i] = in.readDouble();
+				cp.flags[i] = in.readByte();
+			}
+			return cp;
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes this Checkpoint to a file, replacing any existing file.
+	 * @param file the checkpoint file.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public void write(File file) throws IOException
+	{
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		                                            new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(BallSim.ENGINE_VERSION);
+
+			out.writeInt(paramNames.length);
+			for (int i = 0; i < paramNames.length; ++i) {
+				out.writeUTF(paramNames[i]);
+				out.writeUTF(paramValues[i]);
+			}
+
+			out.writeInt(dataNames.length);
+			for (int i = 0; i < dataNames.length; ++i) {
+				out.writeUTF(dataNames[i]);
+				out.writeUTF(dataValues[i]);
+			}
+
+			out.writeInt(randomState.length);
+			out.write(randomState);
+
+			out.writeInt(platX.length);
+			for (int i = 0; i < platX.length; ++i) {
+				out.writeInt(platX[i]);
+				out.writeInt(platY[i]);
+				out.writeInt(platLength[i]);
+			}
+
+			out.writeInt(platformPositions.length);
+			int j = 0;
+			while (j < platformPositions.length) {
+				int run = 1;
+				while (j + run < platformPositions.length
+				       && platformPositions[j + run] == platformPositions[j]) {
+					run++;
+				}
+				out.writeInt(platformPositions[j]);
+				out.writeInt(run);
+				j += run;
+			}
+
+			out.writeInt(xPos.length);
+			for (int i = 0; i < xPos.length; ++i) {
+				out.writeDouble(xPos[i]);
+				out.writeDouble(yPos[i]);
+				out.writeDouble(xVel[i]);
+				out.writeDouble(yVel[i]);
+				out.writeByte(flags[i]);
+			}
+		}
+		catch (IOException e) {
+			out.close();
+			temp.delete();
+			throw e;
+		}
+		out.close();
+
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + file);
+			}
+		}
+	}
+
+	/**
+	 * Sets the values of the given Parameters to the values held in this
+	 * Checkpoint, matching them by name.
+	 * @param params the Parameters to set.
+	 */
+	public void applyParams(Parameter[] params)
+	{
+		apply(paramNames, paramValues, params);
+	}
+
+	/**
+	 * Sets the values of the given data Parameters to the values held in this
+	 * Checkpoint, matching them by name.
+	 * @param data the data Parameters to set.
+	 */
+	void applyData(Parameter[] data)
+	{
+		apply(dataNames, dataValues, data);
+	}
+
+	/**
+	 * Creates the random number generator in the state it was checkpointed
+	 * in.
+	 * @return the Random.
+	 */
+	Random createRandom() throws IOException
+	{
+		ObjectInputStream in = new ObjectInputStream(
+		                       new ByteArrayInputStream(randomState));
+		try {
+			return (Random) in.readObject();
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Creates the checkpointed platforms.
+	 * @param canvas the canvas the platforms are drawn on, or null.
+	 * @return the platforms.
+	 */
+	Platform[] createPlatforms(Canvas canvas)
+	{
+		Platform[] platforms = new Platform[platX.length];
+		for (int i = 0; i < platforms.length; ++i) {
+			platforms[i] = new Platform(platX[i], platY[i], platLength[i],
+			                            canvas);
+		}
+		return platforms;
+	}
+
+	/**
+	 * Gets the checkpointed platform heights as a function of x.
+	 * @return a new int array.
+	 */
+	int[] getPlatformPositions()
+	{
+		return platformPositions.clone();
+	}
+
+	/**
+	 * Gets the number of checkpointed balls.
+	 * @return the number of balls.
+	 */
+	int getNBalls()
+	{
+		return xPos.length;
+	}
+
+	/**
+	 * Puts a ball into the state its checkpointed counterpart was in.
+	 * @param i the index of the ball.
+	 * @param ball the Ball to set.
+	 */
+	void restoreBall(int i, Ball ball)
+	{
+		ball.setState(xPos[i], yPos[i], xVel[i], yVel[i], flags[i]);
+	}
+
+	/**
+	 * Sets Parameter values from lists of names and values.
+	 * @param names the Parameter names.
+	 * @param values the values, as Strings.
+	 * @param params the Parameters to set.
+	 */
+	private static void apply(String[] names, String[] values,
+	                          Parameter[] params)
+	{
+		for (Parameter param : params) {
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i].equals(param.getName())) {
+					param.setValue(values[i]);
+				}
+			}
+		}
+	}
+
+}
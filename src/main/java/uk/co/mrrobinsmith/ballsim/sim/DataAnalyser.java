@@ -15,8 +15,20 @@ public class DataAnalyser
     private IntDataParameter stoppedBalls;
     private IntDataParameter ballsOffScreen;
     private IntDataParameter ballsOnScreen;
-    private final int N_PARAMS = 4;
+    private IntDataParameter framesDrawn;
+    private IntDataParameter framesDropped;
+    private DoubleDataParameter renderLatency;
+    private DoubleDataParameter renderLag;
+    private DoubleDataParameter kineticEnergy;
+    private DoubleDataParameter potentialEnergy;
+    private DoubleDataParameter totalEnergy;
+    private DoubleDataParameter xMomentum;
+    private DoubleDataParameter yMomentum;
+    private final int N_PARAMS = 13;
     private Parameter[] data = new Parameter[N_PARAMS];
+    /* the history of the values which change every time step */
+    private MetricHistory history;
+    private double[] values;
 
     
     /**
@@ -37,6 +49,42 @@ public class DataAnalyser
     	
     	ballsOnScreen = new IntDataParameter("Balls on screen", 0, false);
     	data[i++] = ballsOnScreen;
+    	
+    	framesDrawn = new IntDataParameter("Frames drawn", 0, false);
+    	data[i++] = framesDrawn;
+    	
+    	framesDropped = new IntDataParameter("Frames dropped", 0, false);
+    	data[i++] = framesDropped;
+    	
+    	renderLatency = new DoubleDataParameter("Render latency (ms)", 0.0,
+    	                                        false);
+    	data[i++] = renderLatency;
+    	
+    	renderLag = new DoubleDataParameter("Sim/render lag (ms)", 0.0, false);
+    	data[i++] = renderLag;
+    	
+    	kineticEnergy = new DoubleDataParameter("Kinetic energy", 0.0, false);
+    	data[i++] = kineticEnergy;
+    	
+    	potentialEnergy = new DoubleDataParameter("Potential energy", 0.0,
+    	                                          false);
+    	data[i++] = potentialEnergy;
+    	
+    	totalEnergy = new DoubleDataParameter("Total energy", 0.0, false);
+    	data[i++] = totalEnergy;
+    	
+    	xMomentum = new DoubleDataParameter("Momentum x", 0.0, false);
+    	data[i++] = xMomentum;
+    	
+    	yMomentum = new DoubleDataParameter("Momentum y", 0.0, false);
+    	data[i++] = yMomentum;
+    	
+    	String[] names = {stoppedBalls.getName(), ballsOffScreen.getName(),
+    	                  ballsOnScreen.getName(), kineticEnergy.getName(),
+    	                  potentialEnergy.getName(), totalEnergy.getName(),
+    	                  xMomentum.getName(), yMomentum.getName()};
+    	history = new MetricHistory(names, TimeSeries.DEFAULT_CAPACITY);
+    	values = new double[names.length];
     }
     
     /**
@@ -57,6 +105,42 @@ public class DataAnalyser
         return stoppedBalls.getValue();
     }
     
+    /**
+     * Gets the number of balls in the simulation that are off screen.
+     * @return the number of off-screen balls.
+     */
+    public int getBallsOffScreen()
+    {
+        return ballsOffScreen.getValue();
+    }
+    
+    /**
+     * Gets the number of balls in the simulation that are on screen.
+     * @return the number of on-screen balls.
+     */
+    public int getBallsOnScreen()
+    {
+        return ballsOnScreen.getValue();
+    }
+    
+    /**
+     * Gets the total energy of the balls, as of the latest time step.
+     * @return the kinetic plus potential energy.
+     */
+    public double getTotalEnergy()
+    {
+    	return totalEnergy.getValue();
+    }
+    
+    /**
+     * Gets the history of the values which change every time step.
+     * @return the MetricHistory.
+     */
+    public MetricHistory getHistory()
+    {
+    	return history;
+    }
+    
     /**
      * Gets the set of data parameters from DataAnalyser.
      * @return the array of Parameters.
@@ -115,13 +199,82 @@ public class DataAnalyser
     }
     
     /**
-     * Resets all of the data values to defaults.
+     * Sets the time step and ball counts, e.g. when the simulation is rewound.
+     * @param time the time step.
+     * @param stopped the number of stopped balls.
+     * @param offScreen the number of off-screen balls.
+     * @param onScreen the number of on-screen balls.
+     */
+    void setCounts(int time, int stopped, int offScreen, int onScreen)
+    {
+    	simTime.setValue(time);
+    	stoppedBalls.setValue(stopped);
+    	ballsOffScreen.setValue(offScreen);
+    	ballsOnScreen.setValue(onScreen);
+    }
+    
+    /**
+     * Sets the frame counters reported by the renderer.
+     * @param drawn the number of frames drawn.
+     * @param dropped the number of frames dropped.
+     * @param latency the time from starting a frame to it reaching the
+     * screen, in milliseconds.
+     * @param lag how old the simulation state was when it was drawn, in
+     * milliseconds.
+     */
+    void setFrameStats(int drawn, int dropped, double latency, double lag)
+    {
+    	framesDrawn.setValue(drawn);
+    	framesDropped.setValue(dropped);
+    	renderLatency.setValue(latency);
+    	renderLag.setValue(lag);
+    }
+    
+    /**
+     * Sets the energy and momentum totals of the balls, every time step.
+     * Each ball has unit mass.
+     * @param kinetic the total kinetic energy.
+     * @param potential the total potential energy, from the bottom of the
+     * simulation.
+     * @param xMom the total horizontal momentum.
+     * @param yMom the total vertical momentum, downwards.
+     */
+    void setEnergy(double kinetic, double potential, double xMom, double yMom)
+    {
+    	kineticEnergy.setValue(kinetic);
+    	potentialEnergy.setValue(potential);
+    	totalEnergy.setValue(kinetic + potential);
+    	xMomentum.setValue(xMom);
+    	yMomentum.setValue(yMom);
+    }
+    
+    /**
+     * Adds the values at the current time step to the history. Called once
+     * the time step has been taken.
+     */
+    void recordTick()
+    {
+    	int i = 0;
+    	values[i++] = stoppedBalls.getValue();
+    	values[i++] = ballsOffScreen.getValue();
+    	values[i++] = ballsOnScreen.getValue();
+    	values[i++] = kineticEnergy.getValue();
+    	values[i++] = potentialEnergy.getValue();
+    	values[i++] = totalEnergy.getValue();
+    	values[i++] = xMomentum.getValue();
+    	values[i++] = yMomentum.getValue();
+    	history.record(simTime.getValue(), values);
+    }
+    
+    /**
+     * Resets all of the data values to defaults and clears their history.
      */
     public void reset()
     {
     	for (Parameter param : data) {
     		param.setDefault();
     	}
+    	history.clear();
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * FrameScheduler paces the Renderer at a target frame rate and keeps count
+ * of how well it is keeping up.
+ *
+ * Frames are due at fixed intervals. A frame is dropped, rather than drawn
+ * late, when the renderer wakes up after its deadline has passed, or when the
+ * previous frame is still waiting to be painted to the screen; in that case
+ * drawing another would only pile more work onto the event thread. Under
+ * overload the display therefore shows fewer, but always current, frames
+ * and the GUI stays responsive.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class FrameScheduler
+{
+	public static final int DEFAULT_FRAME_RATE = 60;
+	/* a frame still not painted after this long is assumed lost, in
+	 * nanoseconds */
+	private static final long MAX_IN_FLIGHT = 500000000L;
+	/* weight of each new measurement in the smoothed latency and lag */
+	private static final double SMOOTHING = 0.1;
+
+	private BoundIntParameter frameRate;
+
+	private long nextFrame;
+	private int framesDrawn;
+	private int framesDropped;
+	/* start of the frame waiting to be painted, or 0 for none */
+	private long inFlightSince;
+	private double latency;
+	private double lag;
+
+	/**
+	 * Creates a FrameScheduler targeting the default frame rate.
+	 */
+	public FrameScheduler()
+	{
+		frameRate = new BoundIntParameter("Target frame rate",
+		                                  DEFAULT_FRAME_RATE, 1, 240, true);
+	}
+
+	/**
+	 * Gets the Parameters which set the scheduler.
+	 * @return an array of type Parameter.
+	 */
+	public Parameter[] getParams()
+	{
+		Parameter[] params = {frameRate};
+		return params;
+	}
+
+	/**
+	 * Gets the time between frames at the target frame rate.
+	 * @return the time in nanoseconds.
+	 */
+	public long getFrameTime()
+	{
+		return 1000000000L / frameRate.getValue();
+	}
+
+	/**
+	 * Clears the counters and schedules the first frame for now.
+	 */
+	public void reset()
+	{
+		nextFrame = System.nanoTime();
+		framesDrawn = 0;
+		framesDropped = 0;
+		inFlightSince = 0;
+		latency = 0.0;
+		lag = 0.0;
+	}
+
+	/**
+	 * Waits until the next frame is due. If one or more frames were missed
+	 * altogether, they are counted as dropped and the schedule starts again
+	 * from now.
+	 */
+	public void waitForFrame()
+	{
+		long frameTime = getFrameTime();
+		long wait = nextFrame - System.nanoTime();
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		long late = System.nanoTime() - nextFrame;
+		if (late >= frameTime) {
+			framesDropped += (int) (late / frameTime);
+			nextFrame = System.nanoTime() + frameTime;
+		}
+		else {
+			nextFrame += frameTime;
+		}
+	}
+
+	/**
+	 * Decides whether to draw the frame which is now due.
+	 * @param isPainted whether the previous frame has been painted to the
+	 * screen.
+	 * @param paintTime when the previous frame was painted, from
+	 * System.nanoTime().
+	 * @return true if the frame should be drawn, false if it is dropped.
+	 */
+	public boolean beginFrame(boolean isPainted, long paintTime)
+	{
+		long now = System.nanoTime();
+		if (inFlightSince != 0) {
+			if (isPainted) {
+				latency += SMOOTHING * ((paintTime - inFlightSince) / 1.0e6
+				                        - latency);
+			}
+			else if (now - inFlightSince < MAX_IN_FLIGHT) {
+				framesDropped++;
+				return false;
+			}
+			inFlightSince = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Records that a frame has been drawn and handed over to be painted.
+	 * @param start when drawing the frame started, from System.nanoTime().
+	 * @param publishTime when the simulation state drawn was published.
+	 */
+	public void endFrame(long start, long publishTime)
+	{
+		framesDrawn++;
+		inFlightSince = start;
+		lag += SMOOTHING * ((start - publishTime) / 1.0e6 - lag);
+	}
+
+	/**
+	 * Reports the counters to a DataAnalyser.
+	 * @param data the DataAnalyser.
+	 */
+	public void report(DataAnalyser data)
+	{
+		data.setFrameStats(framesDrawn, framesDropped,
+		                   Math.round(latency * 10.0) / 10.0,
+		                   Math.round(lag * 10.0) / 10.0);
+	}
+
+}
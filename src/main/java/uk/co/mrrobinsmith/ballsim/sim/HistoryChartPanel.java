@@ -0,0 +1,171 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+/**
+ * HistoryChartPanel draws a live line chart of the whole history of each
+ * metric in a MetricHistory, one above another, redrawn REFRESH_RATE times
+ * a second while it is showing.
+ *
+ * Each chart is drawn from the history reduced to one min and max per pixel
+ * column by MetricHistory.decimate(), so a frame takes the same time however
+ * long the simulation has run, and the spikes in a long history are never
+ * lost between pixels. Charts are drawn on the Swing event thread, never on
+ * the simulation thread, which only holds the history's lock while it
+ * records a time step.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+class HistoryChartPanel extends JPanel
+{
+	private static final long serialVersionUID = 1L;
+
+	/* frames per second */
+	private static final int REFRESH_RATE = 10;
+	private static final int CHART_HEIGHT = 48;
+	private static final int GAP = 4;
+	private static final Color BG_COLOR = Color.white;
+	private static final Color AXIS_COLOR = new Color(224, 224, 224);
+	private static final Color LINE_COLOR = new Color(0, 96, 192);
+	private static final Color TEXT_COLOR = Color.darkGray;
+
+	private final MetricHistory history;
+	private final String[] names;
+	private final Timer timer;
+	/* reused for the decimated columns of each chart */
+	private double[] min = new double[0];
+	private double[] max = new double[0];
+
+	/**
+	 * Creates a HistoryChartPanel.
+	 * @param history the history to chart.
+	 * @param width the width of the charts.
+	 */
+	HistoryChartPanel(MetricHistory history, int width)
+	{
+		this.history = history;
+		names = history.getNames();
+		setBackground(BG_COLOR);
+		setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 10));
+		setPreferredSize(new Dimension(width, names.length
+		                               * (CHART_HEIGHT + GAP) + GAP));
+		timer = new Timer(1000 / REFRESH_RATE, new ActionListener() {
+			public void actionPerformed(ActionEvent e) { repaint(); }
+			});
+	}
+
+	/**
+	 * Starts redrawing the charts when the panel is shown.
+	 */
+	public void addNotify()
+	{
+		super.addNotify();
+		timer.start();
+	}
+
+	/**
+	 * Stops redrawing the charts when the panel is taken away.
+	 */
+	public void removeNotify()
+	{
+		timer.stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Draws every chart.
+	 * @param g the graphics to draw with.
+	 */
+	protected void paintComponent(Graphics g)
+	{
+		super.paintComponent(g);
+		int width = getWidth() - 2 * GAP;
+		if (width <= 0) {
+			return;
+		}
+		if (min.length < width) {
+			min = new double[width];
+			max = new double[width];
+		}
+		int top = GAP;
+		for (int m = 0; m < names.length; ++m) {
+			drawChart(g, m, GAP, top, width);
+			top += CHART_HEIGHT + GAP;
+		}
+	}
+
+	/**
+	 * Draws the chart of one metric: its name and latest value, and a line
+	 * through the range of values in each pixel column, scaled to fill the
+	 * height of the chart.
+	 * @param g the graphics to draw with.
+	 * @param metric the index of the metric.
+	 * @param left the x position of the chart.
+	 * @param top the y position of the chart.
+	 * @param width the width of the chart.
+	 */
+	private void drawChart(Graphics g, int metric, int left, int top,
+	                       int width)
+	{
+		g.setColor(AXIS_COLOR);
+		g.drawRect(left, top, width - 1, CHART_HEIGHT - 1);
+
+		history.decimate(metric, width, min, max);
+		double lowest = Double.POSITIVE_INFINITY;
+		double highest = Double.NEGATIVE_INFINITY;
+		for (int c = 0; c < width; ++c) {
+			if (!Double.isNaN(min[c])) {
+				lowest = Math.min(lowest, min[c]);
+				highest = Math.max(highest, max[c]);
+			}
+		}
+
+		if (lowest <= highest) {
+			double range = (highest > lowest) ? highest - lowest : 1.0;
+			double scale = (CHART_HEIGHT - 2) / range;
+			int bottom = top + CHART_HEIGHT - 2;
+			g.setColor(LINE_COLOR);
+			int lastLow = -1;
+			int lastHigh = -1;
+			for (int c = 0; c < width; ++c) {
+				if (Double.isNaN(min[c])) {
+					continue;
+				}
+				int yLow = bottom - (int) ((min[c] - lowest) * scale);
+				int yHigh = bottom - (int) ((max[c] - lowest) * scale);
+				/* join on to the nearest end of the column before */
+				int from = yLow;
+				int to = yHigh;
+				if (lastLow >= 0) {
+					from = Math.max(from, lastHigh);
+					to = Math.min(to, lastLow);
+				}
+				g.drawLine(left + c, from, left + c, to);
+				lastLow = yLow;
+				lastHigh = yHigh;
+			}
+		}
+
+		FontMetrics metrics = g.getFontMetrics();
+		g.setColor(TEXT_COLOR);
+		int baseline = top + metrics.getAscent() + 1;
+		g.drawString(names[metric], left + 3, baseline);
+		double latest = history.getLatest(metric);
+		if (!Double.isNaN(latest)) {
+			String value = String.format("%.6g", latest);
+			g.drawString(value, left + width - 3 - metrics.stringWidth(value),
+			             baseline);
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+/**
+ * HudOverlay draws a small panel of performance figures over the
+ * simulation: the time taken by a time step, the time between frames, the
+ * number of balls still moving and how fast the simulation runs compared
+ * with real time. Each figure is averaged over the last WINDOW samples, and
+ * the time between frames is also drawn as a sparkline.
+ *
+ * All the text is drawn from images made once: the panel with its labels,
+ * and a strip holding one glyph per character a figure can contain. Drawing
+ * the overlay is therefore a few image copies and lines per frame, with no
+ * text layout and no allocation.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+class HudOverlay
+{
+	/* number of samples each figure is averaged over */
+	private static final int WINDOW = 60;
+	private static final String[] LABELS = {"tick", "frame", "balls", "speed"};
+	private static final String GLYPHS = "0123456789.-x";
+	private static final long[] POWERS = {1, 10, 100, 1000};
+	private static final int MARGIN = 4;
+	private static final int SPARK_HEIGHT = 16;
+	private static final Color BG_COLOR = new Color(32, 32, 32);
+	private static final Color TEXT_COLOR = new Color(220, 220, 220);
+	private static final Color SPARK_COLOR = new Color(96, 200, 96);
+
+	private final BufferedImage panel;
+	private final BufferedImage glyphs;
+	private final int glyphWidth;
+	private final int lineHeight;
+	/* x position of the figures within the panel */
+	private final int valueX;
+	private final char[] text = new char[16];
+
+	/* rings of the last WINDOW samples, with running totals */
+	private final long[] tickTimes = new long[WINDOW];
+	private final long[] frameTimes = new long[WINDOW];
+	private final int[] ticks = new int[WINDOW];
+	private final long[] publishTimes = new long[WINDOW];
+	private int nTickSamples = 0;
+	private int nextTickSample = 0;
+	private long tickTimeTotal = 0;
+	private int nFrameSamples = 0;
+	private int nextFrameSample = 0;
+	private long frameTimeTotal = 0;
+	private long lastFrame = 0;
+
+	/**
+	 * Creates a HudOverlay, making its panel and glyph images.
+	 */
+	HudOverlay()
+	{
+		Font font = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+		BufferedImage scratch = new BufferedImage(1, 1,
+		                                          BufferedImage.TYPE_INT_RGB);
+		Graphics2D sg = scratch.createGraphics();
+		FontMetrics metrics = sg.getFontMetrics(font);
+		sg.dispose();
+		glyphWidth = metrics.charWidth('0');
+		lineHeight = metrics.getHeight();
+		int ascent = metrics.getAscent();
+
+		int labelWidth = 0;
+		for (String label : LABELS) {
+			labelWidth = Math.max(labelWidth, metrics.stringWidth(label));
+		}
+		valueX = MARGIN + labelWidth + glyphWidth;
+		int width = valueX + 8 * glyphWidth + MARGIN;
+		int height = MARGIN + LABELS.length * lineHeight + SPARK_HEIGHT
+		             + 2 * MARGIN;
+
+		panel = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = panel.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+		                   RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(BG_COLOR);
+		g.fillRect(0, 0, width, height);
+		g.setFont(font);
+		g.setColor(TEXT_COLOR);
+		for (int i = 0; i < LABELS.length; ++i) {
+			g.drawString(LABELS[i], MARGIN, MARGIN + i * lineHeight + ascent);
+		}
+		g.dispose();
+
+		glyphs = new BufferedImage(GLYPHS.length() * glyphWidth, lineHeight,
+		                           BufferedImage.TYPE_INT_RGB);
+		g = glyphs.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+		                   RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		g.setColor(BG_COLOR);
+		g.fillRect(0, 0, glyphs.getWidth(), lineHeight);
+		g.setFont(font);
+		g.setColor(TEXT_COLOR);
+		for (int i = 0; i < GLYPHS.length(); ++i) {
+			g.drawString(GLYPHS.substring(i, i + 1), i * glyphWidth, ascent);
+		}
+		g.dispose();
+	}
+
+	/**
+	 * Adds a sample from a newly published snapshot.
+	 * @param s the snapshot.
+	 */
+	void addTick(SimSnapshot s)
+	{
+		int i = nextTickSample;
+		if (nTickSamples == WINDOW) {
+			tickTimeTotal -= tickTimes[i];
+		}
+		else {
+			nTickSamples++;
+		}
+		tickTimes[i] = s.stepTime;
+		tickTimeTotal += s.stepTime;
+		ticks[i] = s.tick;
+		publishTimes[i] = s.publishTime;
+		nextTickSample = (i + 1) % WINDOW;
+	}
+
+	/**
+	 * Adds a sample for a frame about to be drawn.
+	 * @param now the time, from System.nanoTime().
+	 */
+	void addFrame(long now)
+	{
+		if (lastFrame != 0) {
+			long time = now - lastFrame;
+			int i = nextFrameSample;
+			if (nFrameSamples == WINDOW) {
+				frameTimeTotal -= frameTimes[i];
+			}
+			else {
+				nFrameSamples++;
+			}
+			frameTimes[i] = time;
+			frameTimeTotal += time;
+			nextFrameSample = (i + 1) % WINDOW;
+		}
+		lastFrame = now;
+	}
+
+	/**
+	 * Draws the overlay in the top left corner.
+	 * @param g the graphics to draw with.
+	 * @param s the snapshot being drawn.
+	 */
+	void draw(Graphics2D g, SimSnapshot s)
+	{
+		g.drawImage(panel, 0, 0, null);
+		int y = MARGIN;
+
+		double tickMs = 0.0;
+		if (nTickSamples > 0) {
+			tickMs = tickTimeTotal / (double) nTickSamples / 1.0e6;
+		}
+		drawNumber(g, tickMs, 3, false, y);
+		y += lineHeight;
+
+		double frameMs = 0.0;
+		if (nFrameSamples > 0) {
+			frameMs = frameTimeTotal / (double) nFrameSamples / 1.0e6;
+		}
+		drawNumber(g, frameMs, 1, false, y);
+		y += lineHeight;
+
+		drawNumber(g, s.activeBalls, 0, false, y);
+		y += lineHeight;
+
+		drawNumber(g, getSpeed(s), 2, true, y);
+		y += lineHeight + MARGIN;
+
+		drawSparkline(g, y);
+	}
+
+	/**
+	 * Gets the simulated time passed per real time over the samples.
+	 * @param s the latest snapshot.
+	 * @return the ratio, or 0 if there are too few samples.
+	 */
+	private double getSpeed(SimSnapshot s)
+	{
+		if (nTickSamples < 2) {
+			return 0.0;
+		}
+		int newest = (nextTickSample + WINDOW - 1) % WINDOW;
+		int oldest = (nTickSamples == WINDOW) ? nextTickSample : 0;
+		long real = publishTimes[newest] - publishTimes[oldest];
+		if (real <= 0) {
+			return 0.0;
+		}
+		return (ticks[newest] - ticks[oldest]) * (double) s.nominalTickTime
+		       / real;
+	}
+
+	/**
+	 * Draws the time between frames, newest on the right, scaled so that the
+	 * longest fills the height of the sparkline.
+	 * @param g the graphics to draw with.
+	 * @param top the y position of the top of the sparkline.
+	 */
+	private void drawSparkline(Graphics2D g, int top)
+	{
+		if (nFrameSamples < 2) {
+			return;
+		}
+		long longest = 1;
+		for (int n = 0; n < nFrameSamples; ++n) {
+			longest = Math.max(longest, frameTimes[n]);
+		}
+		int width = panel.getWidth() - 2 * MARGIN;
+		int bottom = top + SPARK_HEIGHT - 1;
+		int oldest = (nFrameSamples == WINDOW) ? nextFrameSample : 0;
+		g.setColor(SPARK_COLOR);
+		int lastX = 0;
+		int lastY = 0;
+		for (int n = 0; n < nFrameSamples; ++n) {
+			long time = frameTimes[(oldest + n) % WINDOW];
+			int x = MARGIN + n * (width - 1) / (WINDOW - 1);
+			int y = bottom - (int) (time * (SPARK_HEIGHT - 1) / longest);
+			if (n > 0) {
+				g.drawLine(lastX, lastY, x, y);
+			}
+			lastX = x;
+			lastY = y;
+		}
+	}
+
+	/**
+	 * Draws a number right-aligned in the figures column, from the cached
+	 * glyphs.
+	 * @param g the graphics to draw with.
+	 * @param value the number.
+	 * @param decimals the number of decimal places.
+	 * @param isRatio whether to follow the number with an x.
+	 * @param y the y position of the top of the line.
+	 */
+	private void drawNumber(Graphics2D g, double value, int decimals,
+	                        boolean isRatio, int y)
+	{
+		int end = text.length;
+		int start = end;
+		if (isRatio) {
+			text[--start] = 'x';
+		}
+		long scaled = Math.round(Math.abs(value) * POWERS[decimals]);
+		for (int d = 0; d < decimals; ++d) {
+			text[--start] = (char) ('0' + scaled % 10);
+			scaled /= 10;
+		}
+		if (decimals > 0) {
+			text[--start] = '.';
+		}
+		do {
+			text[--start] = (char) ('0' + scaled % 10);
+			scaled /= 10;
+		} while (scaled > 0 && start > 1);
+		if (value < 0.0) {
+			text[--start] = '-';
+		}
+
+		int columns = (panel.getWidth() - MARGIN - valueX) / glyphWidth;
+		int x = valueX + (columns - (end - start)) * glyphWidth;
+		for (int i = start; i < end; ++i, x += glyphWidth) {
+			int sx = GLYPHS.indexOf(text[i]) * glyphWidth;
+			g.drawImage(glyphs, x, y, x + glyphWidth, y + lineHeight,
+			            sx, 0, sx + glyphWidth, lineHeight, null);
+		}
+	}
+
+}
@@ -0,0 +1,208 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * MetricHistory keeps the history of each of a set of metrics, e.g. the
+ * numbers of stopped balls and the total energy, as a TimeSeries, so that
+ * it can be plotted or exported while the simulation runs.
+ *
+ * All the metrics are recorded together once per time step by the
+ * simulation thread, and read by other threads; each holds the lock for one
+ * record or one read, which never waits on anything else.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class MetricHistory
+{
+	private final String[] names;
+	private final TimeSeries[] series;
+	private final int capacity;
+
+	/**
+	 * Creates an empty MetricHistory.
+	 * @param names the names of the metrics.
+	 * @param capacity the most buckets held at each level of each metric.
+	 */
+	public MetricHistory(String[] names, int capacity)
+	{
+		this.names = names.clone();
+		this.capacity = capacity;
+		series = new TimeSeries[names.length];
+		for (int m = 0; m < names.length; ++m) {
+			series[m] = new TimeSeries(capacity);
+		}
+	}
+
+	/**
+	 * Gets the names of the metrics.
+	 * @return an array of names, in the order the metrics are recorded.
+	 */
+	public String[] getNames()
+	{
+		return names.clone();
+	}
+
+	/**
+	 * Gets the memory the history takes, however long it runs.
+	 * @return the size in bytes, roughly.
+	 */
+	public long getMemoryUse()
+	{
+		/* one array of doubles at level 0, and three at each other level */
+		long doubles = (3L * TimeSeries.LEVELS - 2) * capacity;
+		return series.length * doubles * 8;
+	}
+
+	/**
+	 * Records the values of every metric at a time step.
+	 * @param tick the time step.
+	 * @param values the values, in the order of the names.
+	 */
+	public synchronized void record(int tick, double[] values)
+	{
+		for (int m = 0; m < series.length; ++m) {
+			series[m].record(tick, values[m]);
+		}
+	}
+
+	/**
+	 * Clears the history of every metric.
+	 */
+	public synchronized void clear()
+	{
+		for (TimeSeries s : series) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * Gets the last time step recorded.
+	 * @return the time step, or -1 if nothing is recorded.
+	 */
+	public synchronized long getLastTick()
+	{
+		return (series.length == 0) ? -1 : series[0].getLastTick();
+	}
+
+	/**
+	 * Gets the finest level which still holds the whole history.
+	 * @return the level.
+	 */
+	public synchronized int getFullLevel()
+	{
+		int last = TimeSeries.LEVELS - 1;
+		if (series.length == 0) {
+			return last;
+		}
+		long start = series[0].getFirstTick(last);
+		for (int level = 0; level < last; ++level) {
+			if (series[0].getFirstTick(level) == start) {
+				return level;
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Gets the latest value of a metric.
+	 * @param metric the index of the metric.
+	 * @return the value, or NaN if nothing is recorded.
+	 */
+	public synchronized double getLatest(int metric)
+	{
+		TimeSeries s = series[metric];
+		int n = s.getSize(0);
+		return (n == 0) ? Double.NaN : s.getMean(0, n - 1);
+	}
+
+	/**
+	 * Reduces the whole history of a metric to a number of columns for
+	 * plotting, e.g. one per pixel, by taking the min and max of the buckets
+	 * falling in each column. The buckets are taken from the finest level
+	 * holding the whole history, so the work is limited by the number of
+	 * buckets in a level, however long the history is.
+	 * @param metric the index of the metric.
+	 * @param nColumns the number of columns.
+	 * @param min the array to put the smallest value of each column in, or
+	 * NaN for a column with no buckets.
+	 * @param max the array to put the largest value of each column in, or
+	 * NaN for a column with no buckets.
+	 * @return the number of buckets reduced.
+	 */
+	public synchronized int decimate(int metric, int nColumns, double[] min,
+	                                 double[] max)
+	{
+		Arrays.fill(min, 0, nColumns, Double.NaN);
+		Arrays.fill(max, 0, nColumns, Double.NaN);
+		TimeSeries s = series[metric];
+		int level = getFullLevel();
+		int n = s.getSize(level);
+		for (int i = 0; i < n; ++i) {
+			int c = (int) ((long) i * nColumns / n);
+			double lo = s.getMin(level, i);
+			double hi = s.getMax(level, i);
+			if (Double.isNaN(min[c])) {
+				min[c] = lo;
+				max[c] = hi;
+			}
+			else {
+				min[c] = Math.min(min[c], lo);
+				max[c] = Math.max(max[c], hi);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Writes the history of every metric at one level as CSV: a header line,
+	 * then a line per bucket with its first time step and the min, max and
+	 * mean of each metric.
+	 * @param writer the writer to write to.
+	 * @param level the level, from 0 for the raw values to
+	 * TimeSeries.LEVELS - 1 for the whole history.
+	 */
+	public synchronized void writeCsv(PrintWriter writer, int level)
+	{
+		StringBuilder line = new StringBuilder("tick");
+		for (String name : names) {
+			line.append(',').append(quote(name + " min"));
+			line.append(',').append(quote(name + " max"));
+			line.append(',').append(quote(name + " mean"));
+		}
+		writer.println(line);
+		if (series.length == 0) {
+			return;
+		}
+		TimeSeries first = series[0];
+		for (int i = 0; i < first.getSize(level); ++i) {
+			line.setLength(0);
+			line.append(first.getFirstTick(level) + i * first.getWidth(level));
+			for (TimeSeries s : series) {
+				line.append(',').append(s.getMin(level, i));
+				line.append(',').append(s.getMax(level, i));
+				line.append(',').append(s.getMean(level, i));
+			}
+			writer.println(line);
+		}
+	}
+
+	/**
+	 * Quotes a CSV field if it needs it.
+	 * @param field the field.
+	 * @return the field, quoted if it holds a comma or quote.
+	 */
+	private static String quote(String field)
+	{
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+}
@@ -0,0 +1,143 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * PhaseTimer times the phases of a running simulation: stepping the balls,
+ * updating the data and recorders, publishing a snapshot, drawing a frame
+ * and sleeping between time steps.
+ *
+ * Each phase's durations are counted in a LogLinearHistogram. Whenever the
+ * timer reports, the median, 99th percentile and longest duration of each
+ * phase, and how many times per second it ran since the last report, are
+ * shown as data parameters.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class PhaseTimer
+{
+	public static final int STEP = 0;
+	public static final int DATA = 1;
+	public static final int PUBLISH = 2;
+	public static final int DRAW = 3;
+	public static final int SLEEP = 4;
+	private static final String[] PHASE_NAMES = {"Step", "Data", "Publish",
+	                                             "Draw", "Sleep"};
+	private static final int N_PHASES = PHASE_NAMES.length;
+
+	private LogLinearHistogram[] histograms;
+	private DoubleDataParameter[] p50;
+	private DoubleDataParameter[] p99;
+	private DoubleDataParameter[] max;
+	private DoubleDataParameter[] rate;
+	private Parameter[] params;
+
+	/* counts and time at the last report, for the rates */
+	private long[] lastCounts;
+	private long lastReport;
+
+	/**
+	 * Creates a PhaseTimer with no durations recorded.
+	 */
+	public PhaseTimer()
+	{
+		histograms = new LogLinearHistogram[N_PHASES];
+		p50 = new DoubleDataParameter[N_PHASES];
+		p99 = new DoubleDataParameter[N_PHASES];
+		max = new DoubleDataParameter[N_PHASES];
+		rate = new DoubleDataParameter[N_PHASES];
+		params = new Parameter[4 * N_PHASES];
+		lastCounts = new long[N_PHASES];
+
+		int i = 0;
+		for (int p = 0; p < N_PHASES; ++p) {
+			String name = PHASE_NAMES[p];
+			histograms[p] = new LogLinearHistogram();
+			p50[p] = new DoubleDataParameter(name + " p50 (us)", 0.0, false);
+			params[i++] = p50[p];
+			p99[p] = new DoubleDataParameter(name + " p99 (us)", 0.0, false);
+			params[i++] = p99[p];
+			max[p] = new DoubleDataParameter(name + " max (us)", 0.0, false);
+			params[i++] = max[p];
+			rate[p] = new DoubleDataParameter(name + " rate (/s)", 0.0, false);
+			params[i++] = rate[p];
+		}
+		lastReport = System.nanoTime();
+	}
+
+	/**
+	 * Gets the data parameters which show the timings.
+	 * @return an array of type Parameter.
+	 */
+	public Parameter[] getParams()
+	{
+		return params;
+	}
+
+	/**
+	 * Gets the histogram of a phase's durations.
+	 * @param phase the phase, e.g. STEP.
+	 * @return the LogLinearHistogram, in nanoseconds.
+	 */
+	LogLinearHistogram getHistogram(int phase)
+	{
+		return histograms[phase];
+	}
+
+	/**
+	 * Records how long a phase took.
+	 * @param phase the phase, e.g. STEP.
+	 * @param start when the phase started, from System.nanoTime().
+	 * @param end when the phase ended, from System.nanoTime().
+	 */
+	public void record(int phase, long start, long end)
+	{
+		histograms[phase].record(end - start);
+	}
+
+	/**
+	 * Shows the timings recorded so far in the data parameters.
+	 */
+	public void report()
+	{
+		long now = System.nanoTime();
+		double seconds = (now - lastReport) / 1.0e9;
+		for (int p = 0; p < N_PHASES; ++p) {
+			LogLinearHistogram h = histograms[p];
+			p50[p].setValue(toMicros(h.getPercentile(50.0)));
+			p99[p].setValue(toMicros(h.getPercentile(99.0)));
+			max[p].setValue(toMicros(h.getMax()));
+			long count = h.getCount();
+			if (seconds > 0.0) {
+				double r = (count - lastCounts[p]) / seconds;
+				rate[p].setValue(Math.round(r * 10.0) / 10.0);
+			}
+			lastCounts[p] = count;
+		}
+		lastReport = now;
+	}
+
+	/**
+	 * Clears all the timings recorded.
+	 */
+	public void reset()
+	{
+		for (int p = 0; p < N_PHASES; ++p) {
+			histograms[p].reset();
+			lastCounts[p] = 0;
+		}
+		lastReport = System.nanoTime();
+	}
+
+	/**
+	 * Converts a duration to microseconds, to one decimal place.
+	 * @param nanos the duration in nanoseconds.
+	 * @return the duration in microseconds.
+	 */
+	private static double toMicros(long nanos)
+	{
+		return Math.round(nanos / 100.0) / 10.0;
+	}
+
+}
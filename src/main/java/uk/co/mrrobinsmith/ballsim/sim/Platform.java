@@ -32,6 +32,33 @@ public class Platform
         this.canvas = canvas;
     }
     
+    /**
+     * 
+     * @return the x-coordinate of the left-hand end of the platform
+     */
+    public int getX()
+    {
+    	return XPOS;
+    }
+    
+    /**
+     * 
+     * @return the y-coordinate of the platform
+     */
+    public int getY()
+    {
+    	return YPOS;
+    }
+    
+    /**
+     * 
+     * @return the length of the platform
+     */
+    public int getLength()
+    {
+    	return LENGTH;
+    }
+    
     /**
      * Draw the platform onto the canvas in the specified colour.
      * @param colour
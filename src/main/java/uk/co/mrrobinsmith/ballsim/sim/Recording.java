@@ -0,0 +1,480 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import uk.co.mrrobinsmith.ballsim.base.Canvas;
+
+/**
+ * Recording reads a recording file written by a RecordingWriter. It decodes
+ * the ball positions one time step at a time and can seek to any recorded
+ * time step by loading the keyframe before it from the keyframe index and
+ * applying the deltas that follow. If the index is missing, e.g. because the
+ * recording was not closed properly, it is rebuilt by scanning the file.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class Recording
+{
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private DataInputStream in;
+
+	private int simWidth;
+	private int simHeight;
+	private int ballDiameter;
+	private int nBalls;
+	private int keyframeInterval;
+	private int quantum;
+	private String ballColorName;
+	private String platformColorName;
+	private int[] platX;
+	private int[] platY;
+	private int[] platLength;
+	private long framesOffset;
+
+	private int nKeyframes;
+	private int[] keyframeTicks;
+	private long[] keyframeOffsets;
+	private int lastTick;
+
+	/* the decoded state at the current time step */
+	private int tick;
+	private final int[] qx;
+	private final int[] qy;
+	private final boolean[] stopped;
+
+	/**
+	 * Opens a recording file and reads its header and keyframe index. The
+	 * Recording is left at its first time step.
+	 * @param f the recording file.
+	 * @throws IOException if the file cannot be read or is not a recording.
+	 */
+	public Recording(File f) throws IOException
+	{
+		file = new RandomAccessFile(f, "r");
+		channel = file.getChannel();
+		try {
+			readHeader();
+			qx = new int[nBalls];
+			qy = new int[nBalls];
+			stopped = new boolean[nBalls];
+			if (!readIndex()) {
+				scanIndex();
+			}
+			if (nKeyframes == 0) {
+				throw new IOException(f + " holds no recorded time steps");
+			}
+			seek(keyframeTicks[0]);
+		}
+		catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the width of the recorded simulation
+	 */
+	public int getSimWidth()
+	{
+		return simWidth;
+	}
+
+	/**
+	 * @return the height of the recorded simulation
+	 */
+	public int getSimHeight()
+	{
+		return simHeight;
+	}
+
+	/**
+	 * @return the diameter of the recorded balls
+	 */
+	public int getBallDiameter()
+	{
+		return ballDiameter;
+	}
+
+	/**
+	 * @return the number of recorded balls
+	 */
+	public int getBallCount()
+	{
+		return nBalls;
+	}
+
+	/**
+	 * @return the name of the colour of the balls
+	 */
+	public String getBallColorName()
+	{
+		return ballColorName;
+	}
+
+	/**
+	 * @return the name of the colour of the platforms
+	 */
+	public String getPlatformColorName()
+	{
+		return platformColorName;
+	}
+
+	/**
+	 * Creates the recorded platforms.
+	 * @param canvas the canvas for the platforms to be drawn on.
+	 * @return the platforms.
+	 */
+	public Platform[] createPlatforms(Canvas canvas)
+	{
+		Platform[] platforms = new Platform[platX.length];
+		for (int i = 0; i < platforms.length; ++i) {
+			platforms[i] = new Platform(platX[i], platY[i], platLength[i],
+			                            canvas);
+		}
+		return platforms;
+	}
+
+	/**
+	 * @return the first recorded time step.
+	 */
+	public int getFirstTick()
+	{
+		return keyframeTicks[0];
+	}
+
+	/**
+	 * @return the last recorded time step.
+	 */
+	public int getLastTick()
+	{
+		return lastTick;
+	}
+
+	/**
+	 * @return the time step of the decoded ball positions.
+	 */
+	public int getTick()
+	{
+		return tick;
+	}
+
+	/**
+	 * Gets the decoded horizontal position of a ball.
+	 * @param i the index of the ball.
+	 * @return the position.
+	 */
+	public float getXPos(int i)
+	{
+		return qx[i] / (float) quantum;
+	}
+
+	/**
+	 * Gets the decoded vertical position of a ball.
+	 * @param i the index of the ball.
+	 * @return the position.
+	 */
+	public float getYPos(int i)
+	{
+		return qy[i] / (float) quantum;
+	}
+
+	/**
+	 * Checks whether a ball had stopped at the decoded time step.
+	 * @param i the index of the ball.
+	 * @return true or false.
+	 */
+	public boolean isStopped(int i)
+	{
+		return stopped[i];
+	}
+
+	/**
+	 * Decodes the ball positions at a given time step, which is clamped to
+	 * the recorded range.
+	 * @param t the time step.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public void seek(int t) throws IOException
+	{
+		t = Math.max(getFirstTick(), Math.min(lastTick, t));
+
+		/* keyframes are normally evenly spaced, so the index can be computed;
+		 * fall back to searching if the recording was rewound or restarted */
+		int k = (t - keyframeTicks[0]) / keyframeInterval;
+		if (k >= nKeyframes || keyframeTicks[k] > t
+		    || (k + 1 < nKeyframes && keyframeTicks[k + 1] <= t)) {
+			k = Arrays.binarySearch(keyframeTicks, 0, nKeyframes, t);
+			if (k < 0) {
+				k = -k - 2;
+			}
+		}
+
+		openAt(keyframeOffsets[k]);
+		if (in.readByte() != RecordingWriter.KEYFRAME) {
+			throw new IOException("Corrupt keyframe index");
+		}
+		readKeyframe();
+		while (tick < t && next()) {
+		}
+	}
+
+	/**
+	 * Decodes the ball positions at the next recorded time step.
+	 * @return true if there was a next time step, false at the end of the
+	 * recording.
+	 * @throws IOException if the file cannot be read.
+	 */
+	public boolean next() throws IOException
+	{
+		if (tick >= lastTick) {
+			return false;
+		}
+		try {
+			byte type = in.readByte();
+			if (type == RecordingWriter.KEYFRAME) {
+				readKeyframe();
+			}
+			else if (type == RecordingWriter.DELTA) {
+				readDelta();
+			}
+			else {
+				return false;
+			}
+			return true;
+		}
+		catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the recording file.
+	 * @throws IOException if the file cannot be closed.
+	 */
+	public void close() throws IOException
+	{
+		file.close();
+	}
+
+	/**
+	 * Starts reading the file at the given offset.
+	 */
+	private void openAt(long offset) throws IOException
+	{
+		channel.position(offset);
+		in = new DataInputStream(new BufferedInputStream(
+		                         Channels.newInputStream(channel), 65536));
+	}
+
+	private void readHeader() throws IOException
+	{
+		openAt(0);
+		if (in.readInt() != RecordingWriter.MAGIC) {
+			throw new IOException("Not a BallSim recording");
+		}
+		int version = in.readInt();
+		if (version != RecordingWriter.FORMAT_VERSION) {
+			throw new IOException("Unsupported recording version " + version);
+		}
+		simWidth = in.readInt();
+		simHeight = in.readInt();
+		ballDiameter = in.readInt();
+		nBalls = in.readInt();
+		keyframeInterval = in.readInt();
+		quantum = in.readInt();
+		ballColorName = readString();
+		platformColorName = readString();
+		int n = in.readInt();
+		platX = new int[n];
+		platY = new int[n];
+		platLength = new int[n];
+		for (int i = 0; i < n; ++i) {
+			platX[i] = in.readInt();
+			platY[i] = in.readInt();
+			platLength[i] = in.readInt();
+		}
+		framesOffset = 4L * (11 + 3 * n)
+		               + ballColorName.getBytes(StandardCharsets.UTF_8).length
+		               + platformColorName.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	/**
+	 * Reads the keyframe index from the footer of the file.
+	 * @return true if the index was read, false if the file has no footer.
+	 */
+	private boolean readIndex() throws IOException
+	{
+		long length = channel.size();
+		if (length < framesOffset + 16) {
+			return false;
+		}
+		openAt(length - 16);
+		long footer = in.readLong();
+		int last = in.readInt();
+		if (in.readInt() != RecordingWriter.MAGIC || footer < framesOffset
+		    || footer >= length) {
+			return false;
+		}
+
+		openAt(footer);
+		if (in.readByte() != RecordingWriter.END) {
+			return false;
+		}
+		nKeyframes = in.readInt();
+		keyframeTicks = new int[nKeyframes];
+		keyframeOffsets = new long[nKeyframes];
+		for (int i = 0; i < nKeyframes; ++i) {
+			keyframeTicks[i] = in.readInt();
+			keyframeOffsets[i] = in.readLong();
+		}
+		lastTick = last;
+		return true;
+	}
+
+	/**
+	 * Rebuilds the keyframe index by decoding every frame in the file.
+	 */
+	private void scanIndex() throws IOException
+	{
+		nKeyframes = 0;
+		keyframeTicks = new int[64];
+		keyframeOffsets = new long[64];
+		lastTick = Integer.MAX_VALUE;
+
+		long offset = framesOffset;
+		openAt(offset);
+		CountingStream counter = new CountingStream(in);
+		in = new DataInputStream(counter);
+		try {
+			while (true) {
+				long frameOffset = offset + counter.count;
+				byte type = in.readByte();
+				if (type == RecordingWriter.KEYFRAME) {
+					if (nKeyframes == keyframeTicks.length) {
+						keyframeTicks = Arrays.copyOf(keyframeTicks,
+						                              2 * nKeyframes);
+						keyframeOffsets = Arrays.copyOf(keyframeOffsets,
+						                                2 * nKeyframes);
+					}
+					readKeyframe();
+					keyframeTicks[nKeyframes] = tick;
+					keyframeOffsets[nKeyframes] = frameOffset;
+					nKeyframes++;
+				}
+				else if (type == RecordingWriter.DELTA) {
+					readDelta();
+				}
+				else {
+					break;
+				}
+			}
+		}
+		catch (EOFException e) {
+			/* a partly written last frame is ignored */
+		}
+		lastTick = tick;
+	}
+
+	private void readKeyframe() throws IOException
+	{
+		tick = in.readInt();
+		for (int i = 0; i < nBalls; ++i) {
+			qx[i] = in.readInt();
+			qy[i] = in.readInt();
+		}
+		int bits = 0;
+		for (int i = 0; i < nBalls; ++i) {
+			if ((i & 7) == 0) {
+				bits = in.readUnsignedByte();
+			}
+			stopped[i] = (bits & (1 << (i & 7))) != 0;
+		}
+	}
+
+	private void readDelta() throws IOException
+	{
+		int nMoved = readVarInt();
+		int i = -1;
+		for (int j = 0; j < nMoved; ++j) {
+			i += readVarInt() + 1;
+			int dx = readVarInt();
+			int dy = readVarInt();
+			qx[i] += (dx >>> 1) ^ -(dx & 1);
+			qy[i] += (dy >>> 1) ^ -(dy & 1);
+		}
+		int nStopped = readVarInt();
+		i = -1;
+		for (int j = 0; j < nStopped; ++j) {
+			i += readVarInt() + 1;
+			stopped[i] = true;
+		}
+		tick++;
+	}
+
+	private int readVarInt() throws IOException
+	{
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt varint");
+	}
+
+	private String readString() throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/************************************************************************
+	 * Inner class CountingStream - counts the bytes read through it, so that
+	 * frame offsets can be found while scanning.
+	 */
+	private static class CountingStream extends FilterInputStream
+	{
+		long count = 0;
+
+		CountingStream(InputStream in)
+		{
+			super(in);
+		}
+
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException
+		{
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+
+}
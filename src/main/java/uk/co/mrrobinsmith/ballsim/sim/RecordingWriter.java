@@ -0,0 +1,479 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * RecordingWriter records the ball positions of a simulation into a compact
+ * file which can be replayed and sought through using a Recording.
+ *
+ * Positions are quantised to 1/QUANTUM of a pixel. Every keyframeInterval
+ * time steps a keyframe holds the position and stopped state of every ball.
+ * In between, a delta frame holds only the change in quantised position of
+ * each ball that moved, followed by the balls that stopped in that time
+ * step; a stopped ball never appears in a delta frame again. Deltas are taken
+ * from the positions a reader will have reconstructed, so rounding errors do
+ * not build up. The keyframe index is written at the end of the file, giving
+ * Recording constant-time access to the keyframe before any time step.
+ *
+ * File layout (all fixed-size values big-endian):
+ * header: MAGIC, FORMAT_VERSION, sim width, sim height, ball diameter,
+ *         number of balls, keyframe interval, QUANTUM, ball colour name,
+ *         platform colour name, number of platforms, then x, y and length of
+ *         each platform;
+ * frames: KEYFRAME, int time step, int x and int y of each ball, stopped
+ *         flags as a bit set; or
+ *         DELTA, varint number of moved balls, then for each the varint gap
+ *         from the previous ball index and the zigzag varint x and y deltas,
+ *         then the varint number of newly stopped balls and their index gaps;
+ * footer: END, int number of keyframes, int time step and long offset of
+ *         each, long offset of the footer, int last time step, MAGIC.
+ *
+ * Frames are encoded on the simulation thread and handed in batches to a
+ * writer thread, so recording a time step never waits on the disk. If the
+ * writer falls behind, time steps are dropped and the next one recorded is
+ * a keyframe. If the file cannot be written, recording stops and the error
+ * is thrown by close().
+ *
+ * Time steps must go forward, so that the keyframe index stays in order. If
+ * the simulation goes back, e.g. it is rewound or restored, the recording
+ * ends at the last time step before it.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class RecordingWriter implements SimRecorder
+{
+	/* "BSRC" */
+	public static final int MAGIC = 0x42535243;
+	public static final int FORMAT_VERSION = 1;
+	public static final int QUANTUM = 16;
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+
+	static final byte KEYFRAME = 1;
+	static final byte DELTA = 2;
+	static final byte END = 3;
+
+	/* approximate size of a batch of frames handed to the writer */
+	private static final int BATCH_BYTES = 256 * 1024;
+	private static final int N_BATCHES = 8;
+	/* marks the end of the recording on the queue of full batches */
+	private static final ByteBuffer END_OF_FRAMES = ByteBuffer.allocate(0);
+
+	private final OutputStream out;
+	private final BlockingQueue<ByteBuffer> freeBatches;
+	private final BlockingQueue<ByteBuffer> fullBatches;
+	/* the batch being filled by the simulation thread */
+	private ByteBuffer batch;
+	/* the most bytes a keyframe or delta frame can take */
+	private final int maxFrameSize;
+	private final Thread writer;
+	private volatile IOException writeError;
+	private volatile long droppedTicks = 0;
+	/* true once the simulation has gone back in time */
+	private boolean isEnded = false;
+	private final int keyframeInterval;
+	private final int nBalls;
+	/* reconstructed quantised positions, as a reader will see them */
+	private final int[] qx;
+	private final int[] qy;
+	private final boolean[] stopped;
+	/* indexes of balls which stopped in the current time step */
+	private final int[] newlyStopped;
+
+	/* the frame being encoded */
+	private byte[] frame = new byte[4096];
+	private int frameLength;
+
+	private long offset = 0;
+	private int lastTick;
+	private int ticksSinceKeyframe;
+	private int nKeyframes = 0;
+	private int[] keyframeTicks = new int[64];
+	private long[] keyframeOffsets = new long[64];
+
+	/**
+	 * Creates a RecordingWriter, starts its writer thread and writes the
+	 * recording header, describing the simulation as it is now.
+	 * @param file the recording file.
+	 * @param sim the simulation to be recorded.
+	 * @param keyframeInterval the number of time steps between keyframes.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public RecordingWriter(File file, BallSim sim, int keyframeInterval)
+	       throws IOException
+	{
+		this.keyframeInterval = keyframeInterval;
+		nBalls = sim.getBallCount();
+		qx = new int[nBalls];
+		qy = new int[nBalls];
+		stopped = new boolean[nBalls];
+		newlyStopped = new int[nBalls];
+		out = new FileOutputStream(file);
+
+		/* a delta frame takes at most 15 bytes a moved ball and 5 a stopped
+		 * one, and a keyframe at most 9 a ball */
+		maxFrameSize = 20 * nBalls + 16;
+		int batchSize = Math.max(BATCH_BYTES, 2 * maxFrameSize);
+		freeBatches = new ArrayBlockingQueue<ByteBuffer>(N_BATCHES);
+		fullBatches = new ArrayBlockingQueue<ByteBuffer>(N_BATCHES + 1);
+		for (int i = 0; i < N_BATCHES; ++i) {
+			freeBatches.add(ByteBuffer.allocate(batchSize));
+		}
+		writer = new Thread(new Runnable() {
+			public void run() { writeBatches(); }
+		}, "recording-writer");
+		writer.setDaemon(true);
+		writer.start();
+
+		putInt(MAGIC);
+		putInt(FORMAT_VERSION);
+		putInt(sim.getSimWidth());
+		putInt(sim.getSimHeight());
+		putInt(sim.getBallDiameter());
+		putInt(nBalls);
+		putInt(keyframeInterval);
+		putInt(QUANTUM);
+		putString(sim.getBallColorName());
+		putString(sim.getPlatformColorName());
+		Platform[] platforms = sim.getPlatforms();
+		putInt(platforms.length);
+		for (Platform platform : platforms) {
+			putInt(platform.getX());
+			putInt(platform.getY());
+			putInt(platform.getLength());
+		}
+		takeBatch(frameLength);
+		writeFrame();
+		ticksSinceKeyframe = keyframeInterval;
+	}
+
+	/**
+	 * Gets the number of bytes written so far.
+	 * @return the number of bytes.
+	 */
+	public long getBytesWritten()
+	{
+		return offset;
+	}
+
+	/**
+	 * Gets the number of time steps which were not recorded because the
+	 * writer thread had fallen behind.
+	 * @return the number of time steps.
+	 */
+	public long getDroppedTicks()
+	{
+		return droppedTicks;
+	}
+
+	/**
+	 * Records the ball positions at a time step, as a keyframe or a delta
+	 * frame. A keyframe is also written whenever time steps have been
+	 * dropped. Called by the simulation thread; never blocks.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 */
+	public void record(int tick, Ball[][] pages)
+	{
+		if (writeError != null || isEnded) {
+			return;
+		}
+		if (nKeyframes > 0 && tick <= lastTick) {
+			isEnded = true;
+			return;
+		}
+		if (batch == null || batch.remaining() < maxFrameSize) {
+			if (batch != null) {
+				handOver();
+			}
+			batch = freeBatches.poll();
+			if (batch == null) {
+				droppedTicks++;
+				return;
+			}
+		}
+
+		if (ticksSinceKeyframe >= keyframeInterval || tick != lastTick + 1) {
+			writeKeyframe(tick, pages);
+			ticksSinceKeyframe = 0;
+		}
+		else {
+			writeDelta(pages);
+		}
+		ticksSinceKeyframe++;
+		lastTick = tick;
+	}
+
+	/**
+	 * Writes the keyframe index, waits for the writer thread to write out
+	 * every frame and closes the file.
+	 * @throws IOException if the recording could not be written.
+	 */
+	public void close() throws IOException
+	{
+		long footer = offset;
+		putByte(END);
+		putInt(nKeyframes);
+		for (int i = 0; i < nKeyframes; ++i) {
+			putInt(keyframeTicks[i]);
+			putLong(keyframeOffsets[i]);
+		}
+		putLong(footer);
+		putInt(lastTick);
+		putInt(MAGIC);
+		if (batch == null || batch.remaining() < frameLength) {
+			if (batch != null) {
+				handOver();
+			}
+			takeBatch(frameLength);
+		}
+		writeFrame();
+		handOver();
+
+		fullBatches.add(END_OF_FRAMES);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			out.close();
+		}
+		catch (IOException e) {
+			if (writeError == null) {
+				writeError = e;
+			}
+		}
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	/**
+	 * Writes a keyframe holding the position and stopped state of every ball.
+	 */
+	private void writeKeyframe(int tick, Ball[][] pages)
+	{
+		if (nKeyframes == keyframeTicks.length) {
+			keyframeTicks = Arrays.copyOf(keyframeTicks, 2 * nKeyframes);
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, 2 * nKeyframes);
+		}
+		keyframeTicks[nKeyframes] = tick;
+		keyframeOffsets[nKeyframes] = offset;
+		nKeyframes++;
+
+		putByte(KEYFRAME);
+		putInt(tick);
+		int i = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				qx[i] = quantise(ball.getXPos());
+				qy[i] = quantise(ball.getYPos());
+				stopped[i] = ball.isStopped();
+				putInt(qx[i]);
+				putInt(qy[i]);
+				i++;
+			}
+		}
+		int bits = 0;
+		for (i = 0; i < nBalls; ++i) {
+			if (stopped[i]) {
+				bits |= 1 << (i & 7);
+			}
+			if ((i & 7) == 7 || i == nBalls - 1) {
+				putByte(bits);
+				bits = 0;
+			}
+		}
+		writeFrame();
+	}
+
+	/**
+	 * Writes a delta frame holding the moved and newly stopped balls.
+	 */
+	private void writeDelta(Ball[][] pages)
+	{
+		putByte(DELTA);
+		/* the count of moved balls is filled in once it is known */
+		int countAt = frameLength;
+		ensureCapacity(5);
+		frameLength += 5;
+
+		int nMoved = 0;
+		int nStopped = 0;
+		int previous = -1;
+		int i = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				if (!stopped[i]) {
+					int dx = quantise(ball.getXPos()) - qx[i];
+					int dy = quantise(ball.getYPos()) - qy[i];
+					if (dx != 0 || dy != 0) {
+						putVarInt(i - previous - 1);
+						putVarInt((dx << 1) ^ (dx >> 31));
+						putVarInt((dy << 1) ^ (dy >> 31));
+						qx[i] += dx;
+						qy[i] += dy;
+						previous = i;
+						nMoved++;
+					}
+					if (ball.isStopped()) {
+						stopped[i] = true;
+						newlyStopped[nStopped++] = i;
+					}
+				}
+				i++;
+			}
+		}
+
+		putVarInt(nStopped);
+		previous = -1;
+		for (int j = 0; j < nStopped; ++j) {
+			putVarInt(newlyStopped[j] - previous - 1);
+			previous = newlyStopped[j];
+		}
+
+		/* store the moved count as a fixed five byte varint */
+		for (int j = 0; j < 4; ++j) {
+			frame[countAt + j] = (byte) ((nMoved & 0x7f) | 0x80);
+			nMoved >>>= 7;
+		}
+		frame[countAt + 4] = (byte) nMoved;
+		writeFrame();
+	}
+
+	/**
+	 * Converts a position to quantised units.
+	 */
+	private static int quantise(double pos)
+	{
+		return (int) Math.round(pos * QUANTUM);
+	}
+
+	/**
+	 * Adds the encoded frame to the current batch and starts a new one.
+	 */
+	private void writeFrame()
+	{
+		batch.put(frame, 0, frameLength);
+		offset += frameLength;
+		frameLength = 0;
+	}
+
+	/**
+	 * Waits for a free batch to become the current batch; used only for the
+	 * header and footer, which are never dropped.
+	 * @param size the fewest bytes the batch must hold.
+	 */
+	private void takeBatch(int size)
+	{
+		try {
+			batch = freeBatches.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			batch = ByteBuffer.allocate(size);
+		}
+		if (batch.capacity() < size) {
+			batch = ByteBuffer.allocate(size);
+		}
+	}
+
+	/**
+	 * Passes the current batch to the writer thread.
+	 */
+	private void handOver()
+	{
+		batch.flip();
+		fullBatches.add(batch);
+		batch = null;
+	}
+
+	/**
+	 * Run by the writer thread: writes full batches to the file until the
+	 * recording is closed. After an error the batches are only recycled.
+	 */
+	private void writeBatches()
+	{
+		try {
+			while (true) {
+				ByteBuffer b = fullBatches.take();
+				if (b == END_OF_FRAMES) {
+					break;
+				}
+				if (writeError == null) {
+					try {
+						out.write(b.array(), 0, b.limit());
+					}
+					catch (IOException e) {
+						writeError = e;
+					}
+				}
+				b.clear();
+				freeBatches.offer(b);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void ensureCapacity(int n)
+	{
+		if (frameLength + n > frame.length) {
+			frame = Arrays.copyOf(frame, Math.max(2 * frame.length,
+			                                      frameLength + n));
+		}
+	}
+
+	private void putByte(int b)
+	{
+		ensureCapacity(1);
+		frame[frameLength++] = (byte) b;
+	}
+
+	private void putInt(int v)
+	{
+		ensureCapacity(4);
+		frame[frameLength++] = (byte) (v >>> 24);
+		frame[frameLength++] = (byte) (v >>> 16);
+		frame[frameLength++] = (byte) (v >>> 8);
+		frame[frameLength++] = (byte) v;
+	}
+
+	private void putLong(long v)
+	{
+		putInt((int) (v >>> 32));
+		putInt((int) v);
+	}
+
+	private void putVarInt(int v)
+	{
+		ensureCapacity(5);
+		while ((v & ~0x7f) != 0) {
+			frame[frameLength++] = (byte) ((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		frame[frameLength++] = (byte) v;
+	}
+
+	private void putString(String s)
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		putInt(bytes.length);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, frame, frameLength, bytes.length);
+		frameLength += bytes.length;
+	}
+
+}
@@ -0,0 +1,227 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import uk.co.mrrobinsmith.ballsim.base.Canvas;
+
+/**
+ * Renderer draws a running simulation on its own thread, so that drawing
+ * never holds up the simulation and a burst of simulation work never holds
+ * up the display.
+ *
+ * The simulation publishes a SimSnapshot into a TripleBuffer after each
+ * time step. Once per frame the Renderer takes the latest complete snapshot,
+ * draws the whole frame into an image of its own and then copies that image
+ * onto the Canvas in one go, so a half-drawn frame is never shown.
+ *
+ * Each ball is drawn part way between its positions at the last two time
+ * steps, according to how much real time has passed towards the next time
+ * step, so motion is smooth even when time steps are taken less often than
+ * frames are drawn. A ball which has jumped further than SNAP_DISTANCE, e.g.
+ * because the simulation was rewound, is drawn where it is now.
+ *
+ * Frames are paced by a FrameScheduler. A frame is not drawn while the one
+ * before it is still waiting to be painted, so if the display falls behind,
+ * frames are dropped rather than queued. The frame counters, the latency
+ * from drawing to painting and the lag behind the simulation are reported
+ * to the simulation's DataAnalyser.
+ *
+ * If the snapshot asks for it, a HudOverlay of performance figures is drawn
+ * over each frame.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class Renderer implements Runnable
+{
+	/* colour of ball trails, here so that only drawing loads java.awt */
+	static final Color TRAIL_COLOR = Color.gray;
+	/* number of frames between reports of the frame counters */
+	private static final int REPORT_INTERVAL = 15;
+	/* balls which moved further than this in one time step are not
+	 * interpolated */
+	private static final float SNAP_DISTANCE = 64.0f;
+
+	private final Canvas canvas;
+	private final TripleBuffer<SimSnapshot> snapshots;
+	private final Color bgColor;
+	private final Color trailColor;
+	private final FrameScheduler scheduler;
+	private final DataAnalyser data;
+	private final PhaseTimer timer;
+	private final HudOverlay hud = new HudOverlay();
+	private final BufferedImage frame;
+	private final Graphics2D graphic;
+	private final int width;
+	private final int height;
+
+	private Thread thread;
+	private volatile boolean isRunning = false;
+
+	/**
+	 * Creates a Renderer for a Canvas.
+	 * @param canvas the canvas to draw onto.
+	 * @param snapshots the TripleBuffer the simulation publishes into.
+	 * @param bgColor the background colour.
+	 * @param trailColor the colour of ball trails.
+	 * @param scheduler the FrameScheduler which paces the frames.
+	 * @param data the DataAnalyser to report the frame counters to.
+	 * @param timer the PhaseTimer to record drawing times in.
+	 */
+	Renderer(Canvas canvas, TripleBuffer<SimSnapshot> snapshots,
+	         Color bgColor, Color trailColor, FrameScheduler scheduler,
+	         DataAnalyser data, PhaseTimer timer)
+	{
+		this.canvas = canvas;
+		this.snapshots = snapshots;
+		this.bgColor = bgColor;
+		this.trailColor = trailColor;
+		this.scheduler = scheduler;
+		this.data = data;
+		this.timer = timer;
+		Dimension size = canvas.getSize();
+		width = size.width;
+		height = size.height;
+		frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		graphic = frame.createGraphics();
+	}
+
+	/**
+	 * Starts the render thread.
+	 */
+	public void start()
+	{
+		isRunning = true;
+		thread = new Thread(this, "sim-renderer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops the render thread, waiting for it to finish, and then draws the
+	 * last snapshot published, so the final state of the simulation is shown.
+	 */
+	public void stop()
+	{
+		isRunning = false;
+		try {
+			thread.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		snapshots.update();
+		draw(snapshots.getFront(), 1.0f);
+		scheduler.report(data);
+	}
+
+	/**
+	 * Run by the render thread: draws the latest snapshot once per frame
+	 * until stopped, unless the frame before is still waiting to be painted.
+	 */
+	public void run()
+	{
+		/* whether the front snapshot has been drawn at its final position */
+		boolean isSettled = false;
+		/* the canvas's paint count when the last frame was handed over */
+		long paintsAtSubmit = canvas.getPaintCount();
+		int frames = 0;
+		scheduler.reset();
+		while (isRunning) {
+			scheduler.waitForFrame();
+			if (snapshots.update()) {
+				isSettled = false;
+				hud.addTick(snapshots.getFront());
+			}
+			if (isSettled) {
+				continue;
+			}
+			boolean isPainted = canvas.getPaintCount() != paintsAtSubmit;
+			if (!scheduler.beginFrame(isPainted, canvas.getLastPaintTime())) {
+				continue;
+			}
+			long start = System.nanoTime();
+			hud.addFrame(start);
+			SimSnapshot s = snapshots.getFront();
+			double alpha = s.getAlpha(start);
+			paintsAtSubmit = canvas.getPaintCount();
+			draw(s, (float) alpha);
+			timer.record(PhaseTimer.DRAW, start, System.nanoTime());
+			scheduler.endFrame(start, s.publishTime);
+			isSettled = (alpha >= 1.0);
+			if (++frames % REPORT_INTERVAL == 0) {
+				scheduler.report(data);
+			}
+		}
+	}
+
+	/**
+	 * Draws a snapshot into the frame image and copies it onto the canvas.
+	 * @param s the snapshot.
+	 * @param alpha how far to draw the balls from their previous positions
+	 * towards their current ones, from 0 to 1.
+	 */
+	private void draw(SimSnapshot s, float alpha)
+	{
+		Graphics2D g = graphic;
+		g.setColor(bgColor);
+		g.fillRect(0, 0, width, height);
+
+		g.setColor(s.platformColor);
+		for (Platform platform : s.platforms) {
+			g.drawLine(platform.getX(), platform.getY(),
+			           platform.getX() + platform.getLength(),
+			           platform.getY());
+		}
+
+		if (s.trailPoints >= 2) {
+			g.setColor(trailColor);
+			int capacity = s.trailCapacity;
+			int oldest = (s.trailNewest + capacity - s.trailPoints + 1)
+			             % capacity;
+			for (int k = 0; k < s.nTraced; ++k) {
+				int base = k * capacity;
+				int a = oldest;
+				for (int n = 1; n < s.trailPoints; ++n) {
+					int b = (a + 1) % capacity;
+					g.drawLine((int) s.trailX[base + a],
+					           (int) s.trailY[base + a],
+					           (int) s.trailX[base + b],
+					           (int) s.trailY[base + b]);
+					a = b;
+				}
+			}
+		}
+
+		g.setColor(s.ballColor);
+		int d = s.diameter;
+		boolean interpolate = s.interpolate && alpha < 1.0f;
+		for (int i = 0; i < s.nBalls; ++i) {
+			if (!s.onScreen[i]) {
+				continue;
+			}
+			float x = s.x[i];
+			float y = s.y[i];
+			if (interpolate) {
+				float dx = x - s.prevX[i];
+				float dy = y - s.prevY[i];
+				if (Math.abs(dx) + Math.abs(dy) < SNAP_DISTANCE) {
+					x -= dx * (1.0f - alpha);
+					y -= dy * (1.0f - alpha);
+				}
+			}
+			g.fillOval((int) x, (int) y, d, d);
+		}
+
+		if (s.showHud) {
+			hud.draw(g, s);
+		}
+
+		canvas.drawImage(frame, 0, 0);
+	}
+
+}
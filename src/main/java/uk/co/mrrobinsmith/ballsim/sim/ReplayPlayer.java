@@ -0,0 +1,350 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+import uk.co.mrrobinsmith.ballsim.base.Canvas;
+
+/**
+ * ReplayPlayer plays a Recording back onto a Canvas without simulating it.
+ *
+ * A decode thread reads ahead through the Recording, filling a bounded queue
+ * with decoded frames taken from a fixed pool, so that playback never waits
+ * for the file. A playback thread takes frames from the queue at the chosen
+ * speed and draws the latest one. Seeking asks the decode thread to jump to
+ * the keyframe before the requested time step; frames decoded before the
+ * seek are recognised by their generation number and thrown away.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class ReplayPlayer
+{
+	/* time between drawn frames, in milliseconds */
+	private static final int FRAME_TIME = 16;
+	/* time a recorded time step lasts when played at normal speed */
+	private static final double TICK_TIME = 8.0;
+	private static final int N_FRAMES = 64;
+	private static final int NO_SEEK = Integer.MIN_VALUE;
+
+	private final Recording recording;
+	private final Canvas canvas;
+	private final BallSimGUI gui;
+	private final Platform[] platforms;
+	private final Color ballColor;
+	private final Color platformColor;
+	private final int diameter;
+
+	private final BlockingQueue<Frame> freeFrames;
+	private final BlockingQueue<Frame> fullFrames;
+	private final AtomicInteger seekRequest = new AtomicInteger(NO_SEEK);
+	private volatile int generation = 0;
+
+	private final Thread decoder;
+	private final Thread player;
+	private volatile boolean isClosed = false;
+	private volatile boolean isPlaying = false;
+	private volatile boolean showNext = true;
+	private volatile double speed = 1.0;
+	private volatile IOException readError;
+
+	/* playback thread state */
+	private volatile Frame shown;
+	private double ticksDue = 0.0;
+
+	/**
+	 * Creates a ReplayPlayer, paused at the first recorded time step, and
+	 * starts its threads.
+	 * @param recording the Recording to play.
+	 * @param canvas the Canvas to draw onto.
+	 * @param gui the GUI to report progress to.
+	 */
+	public ReplayPlayer(Recording recording, Canvas canvas, BallSimGUI gui)
+	{
+		this.recording = recording;
+		this.canvas = canvas;
+		this.gui = gui;
+		platforms = recording.createPlatforms(canvas);
+		ballColor = toColor(recording.getBallColorName());
+		platformColor = toColor(recording.getPlatformColorName());
+		diameter = recording.getBallDiameter();
+
+		freeFrames = new ArrayBlockingQueue<Frame>(N_FRAMES);
+		fullFrames = new ArrayBlockingQueue<Frame>(N_FRAMES);
+		for (int i = 0; i < N_FRAMES; ++i) {
+			freeFrames.add(new Frame(recording.getBallCount()));
+		}
+		seekRequest.set(recording.getFirstTick());
+
+		decoder = new Thread(new Runnable() {
+			public void run() { decode(); }
+		}, "replay-decoder");
+		decoder.setDaemon(true);
+		player = new Thread(new Runnable() {
+			public void run() { playFrames(); }
+		}, "replay-player");
+		player.setDaemon(true);
+		decoder.start();
+		player.start();
+	}
+
+	/**
+	 * @return the first recorded time step.
+	 */
+	public int getFirstTick()
+	{
+		return recording.getFirstTick();
+	}
+
+	/**
+	 * @return the last recorded time step.
+	 */
+	public int getLastTick()
+	{
+		return recording.getLastTick();
+	}
+
+	/**
+	 * @return true if the replay is playing, false if it is paused.
+	 */
+	public boolean isPlaying()
+	{
+		return isPlaying;
+	}
+
+	/**
+	 * Starts or resumes playback, from the start if the end has been reached.
+	 */
+	public void play()
+	{
+		Frame f = shown;
+		if (f != null && f.tick >= recording.getLastTick()) {
+			seek(recording.getFirstTick());
+		}
+		isPlaying = true;
+	}
+
+	/**
+	 * Pauses playback.
+	 */
+	public void pause()
+	{
+		isPlaying = false;
+	}
+
+	/**
+	 * Sets the playback speed.
+	 * @param speed the number of recorded time steps played per time step of
+	 * the original simulation at its normal speed.
+	 */
+	public void setSpeed(double speed)
+	{
+		this.speed = speed;
+	}
+
+	/**
+	 * Jumps to a recorded time step and draws it, whether playing or paused.
+	 * @param tick the time step.
+	 */
+	public void seek(int tick)
+	{
+		generation++;
+		showNext = true;
+		seekRequest.set(tick);
+	}
+
+	/**
+	 * Stops playback and closes the Recording.
+	 * @throws IOException if the Recording could not be read or closed.
+	 */
+	public void close() throws IOException
+	{
+		isClosed = true;
+		try {
+			decoder.join();
+			player.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		recording.close();
+		if (readError != null) {
+			throw readError;
+		}
+	}
+
+	/**
+	 * Run by the decode thread: decodes frames into the queue, ahead of
+	 * playback, until the player is closed.
+	 */
+	private void decode()
+	{
+		int frameGeneration = generation;
+		boolean atEnd = false;
+		try {
+			while (!isClosed) {
+				int tick = seekRequest.getAndSet(NO_SEEK);
+				if (tick != NO_SEEK) {
+					frameGeneration = generation;
+					recording.seek(tick);
+					atEnd = false;
+				}
+				else if (atEnd || !recording.next()) {
+					atEnd = true;
+					canvas.wait(FRAME_TIME);
+					continue;
+				}
+
+				Frame f = null;
+				while (f == null && !isClosed) {
+					f = freeFrames.poll(FRAME_TIME, TimeUnit.MILLISECONDS);
+					if (f == null && seekRequest.get() != NO_SEEK) {
+						break;
+					}
+				}
+				if (f != null) {
+					f.fill(recording, frameGeneration);
+					fullFrames.add(f);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			readError = e;
+			isPlaying = false;
+		}
+	}
+
+	/**
+	 * Run by the playback thread: takes frames from the queue at the
+	 * playback speed and draws them until the player is closed.
+	 */
+	private void playFrames()
+	{
+		while (!isClosed) {
+			Frame latest = null;
+			if (showNext) {
+				latest = nextFrame();
+				if (latest != null) {
+					showNext = false;
+				}
+			}
+			if (isPlaying) {
+				ticksDue += speed * FRAME_TIME / TICK_TIME;
+				while (ticksDue >= 1.0) {
+					Frame f = nextFrame();
+					if (f == null) {
+						/* the decoder has fallen behind; don't build up debt */
+						ticksDue = Math.min(ticksDue, 1.0);
+						break;
+					}
+					recycle(latest);
+					latest = f;
+					ticksDue -= 1.0;
+				}
+			}
+			else {
+				ticksDue = 0.0;
+			}
+
+			if (latest != null) {
+				recycle(shown);
+				shown = latest;
+				draw(shown);
+				gui.replayProgress(shown.tick);
+				if (isPlaying && shown.tick >= recording.getLastTick()) {
+					isPlaying = false;
+					gui.replayFinished();
+				}
+			}
+			canvas.wait(FRAME_TIME);
+		}
+	}
+
+	/**
+	 * Takes the next decoded frame, throwing away any decoded before the
+	 * latest seek.
+	 * @return the frame, or null if none is ready.
+	 */
+	private Frame nextFrame()
+	{
+		Frame f;
+		while ((f = fullFrames.poll()) != null) {
+			if (f.generation == generation) {
+				return f;
+			}
+			recycle(f);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns a frame to the pool.
+	 */
+	private void recycle(Frame f)
+	{
+		if (f != null) {
+			freeFrames.add(f);
+		}
+	}
+
+	/**
+	 * Draws a frame onto the canvas.
+	 */
+	private void draw(Frame f)
+	{
+		canvas.erase();
+		for (Platform platform : platforms) {
+			platform.draw(platformColor);
+		}
+		canvas.setForegroundColor(ballColor);
+		for (int i = 0; i < f.x.length; ++i) {
+			canvas.fillCircle((int) f.x[i], (int) f.y[i], diameter);
+		}
+	}
+
+	/**
+	 * Converts a colour name to a Color.
+	 */
+	private static Color toColor(String name)
+	{
+		String[] names = {name};
+		return new ColorParameter(name, names, false).getValue();
+	}
+
+	/************************************************************************
+	 * Inner class Frame - the decoded ball positions at one time step.
+	 */
+	private static class Frame
+	{
+		int tick;
+		int generation;
+		final float[] x;
+		final float[] y;
+
+		Frame(int nBalls)
+		{
+			x = new float[nBalls];
+			y = new float[nBalls];
+		}
+
+		void fill(Recording recording, int generation)
+		{
+			this.generation = generation;
+			tick = recording.getTick();
+			for (int i = 0; i < x.length; ++i) {
+				x[i] = recording.getXPos(i);
+				y[i] = recording.getYPos(i);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * ResultCache is an on-disk, content-addressed store of the final data values
+ * of simulation runs. Each entry is keyed by a hash of every simulation
+ * parameter value, the random seed, the number of time steps run and the
+ * engine version, so a run is only ever simulated once for a given set of
+ * inputs. The number of entries is bounded; when full, the least recently
+ * used entry is evicted.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class ResultCache
+{
+	private static final String SUFFIX = ".result";
+	private static final int FORMAT_VERSION = 1;
+
+	private final File dir;
+	private final int maxEntries;
+	/* entry files in least to most recently used order */
+	private final LinkedHashMap<String, File> entries;
+
+	/**
+	 * Creates a ResultCache which stores its entries in the given directory,
+	 * picking up any entries left there by earlier runs.
+	 * @param dir the directory to store cache entries in.
+	 * @param maxEntries the maximum number of entries kept in the cache.
+	 */
+	public ResultCache(File dir, int maxEntries)
+	{
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalArgumentException("Cannot create cache directory "
+			                                   + dir);
+		}
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+		entries = new LinkedHashMap<String, File>(16, 0.75f, true);
+		loadEntries();
+	}
+
+	/**
+	 * Computes the cache key for a simulation run.
+	 * @param params the simulation parameters, in their canonical order.
+	 * @param seed the random seed used to create the simulation objects.
+	 * @param nTicks the number of time steps run.
+	 * @param engineVersion the version of the simulation engine.
+	 * @return the key as a String of hex digits.
+	 */
+	public static String key(Parameter[] params, long seed, int nTicks,
+	                         int engineVersion)
+	{
+		StringBuilder s = new StringBuilder();
+		for (Parameter param : params) {
+			s.append(param.getName()).append('\0');
+			s.append(param.getValueString()).append('\0');
+		}
+		s.append(seed).append('\0');
+		s.append(nTicks).append('\0');
+		s.append(engineVersion);
+
+		byte[] hash;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			hash = digest.digest(s.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Looks up a cache entry and, if found, sets the values of the given
+	 * result Parameters from it.
+	 * @param key the cache key.
+	 * @param results the Parameters to set, matched to the entry by name.
+	 * @return true if the entry was found, false otherwise.
+	 */
+	public synchronized boolean get(String key, Parameter[] results)
+	{
+		File file = entries.get(key);
+		if (file == null) {
+			return false;
+		}
+
+		String[] names;
+		String[] values;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+			                                         new FileInputStream(file)));
+			try {
+				if (in.readInt() != FORMAT_VERSION) {
+					throw new IOException("Unknown result format");
+				}
+				int n = in.readInt();
+				names = new String[n];
+				values = new String[n];
+				for (int i = 0; i < n; ++i) {
+					names[i] = in.readUTF();
+					values[i] = in.readUTF();
+				}
+			}
+			finally {
+				in.close();
+			}
+		}
+		catch (IOException e) {
+			/* treat an unreadable entry as a miss and drop it */
+			remove(key);
+			return false;
+		}
+
+		for (Parameter param : results) {
+			for (int i = 0; i < names.length; ++i) {
+				if (names[i].equals(param.getName())) {
+					param.setValue(values[i]);
+				}
+			}
+		}
+		file.setLastModified(System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Stores the values of the given result Parameters under a key, evicting
+	 * the least recently used entries if the cache is full. Failure to write
+	 * the entry is not an error; the result is simply not cached.
+	 * @param key the cache key.
+	 * @param results the Parameters whose values are stored.
+	 */
+	public synchronized void put(String key, Parameter[] results)
+	{
+		File file = new File(dir, key + SUFFIX);
+		File temp = new File(dir, key + SUFFIX + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(
+			                       new BufferedOutputStream(
+			                       new FileOutputStream(temp)));
+			try {
+				out.writeInt(FORMAT_VERSION);
+				out.writeInt(results.length);
+				for (Parameter param : results) {
+					out.writeUTF(param.getName());
+					out.writeUTF(param.getValueString());
+				}
+			}
+			finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					throw new IOException("Cannot rename " + temp);
+				}
+			}
+		}
+		catch (IOException e) {
+			temp.delete();
+			return;
+		}
+
+		entries.put(key, file);
+		evict();
+	}
+
+	/**
+	 * Gets the number of entries currently in the cache.
+	 * @return the number of entries.
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Removes an entry from the cache.
+	 * @param key the key of the entry.
+	 */
+	private void remove(String key)
+	{
+		File file = entries.remove(key);
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is no larger
+	 * than its maximum size.
+	 */
+	private void evict()
+	{
+		Iterator<Map.Entry<String, File>> it = entries.entrySet().iterator();
+		while (entries.size() > maxEntries && it.hasNext()) {
+			it.next().getValue().delete();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Fills the entry index from the files in the cache directory, oldest
+	 * first, so that the least recently used order survives restarts.
+	 */
+	private void loadEntries()
+	{
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				String key = name.substring(0, name.length() - SUFFIX.length());
+				entries.put(key, file);
+			}
+		}
+		evict();
+	}
+
+}
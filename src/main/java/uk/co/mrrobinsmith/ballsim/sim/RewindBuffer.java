@@ -0,0 +1,279 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RewindBuffer holds the recent history of a simulation in memory so that it
+ * can be stepped back to any of its last few thousand time steps and
+ * continued from there, e.g. with different parameter values.
+ *
+ * History is kept as frames in a ring of bytes of a fixed size, allocated
+ * once. Every snapshotInterval time steps a snapshot frame holds the exact
+ * state of every ball; each time step in between has a delta frame holding
+ * the state of only those balls which had not already stopped, since a
+ * stopped ball never changes. When the ring is full, or holds maxTicks time
+ * steps, the oldest snapshot is dropped together with its deltas. Recording
+ * a time step allocates nothing.
+ *
+ * Frame layout: type, int time step, int stopped balls, int balls off
+ * screen, int balls on screen, int number of balls in the frame, then for
+ * each ball its index (delta frames only), x position, y position, x speed,
+ * y speed and flags.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class RewindBuffer
+{
+	public static final int DEFAULT_BUDGET = 32 * 1024 * 1024;
+	public static final int DEFAULT_MAX_TICKS = 2000;
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+	private static final byte SNAPSHOT = 1;
+	private static final byte DELTA = 2;
+	private static final int HEADER_SIZE = 21;
+	private static final int COUNT_OFFSET = 17;
+	private static final int SNAPSHOT_ENTRY_SIZE = 33;
+	private static final int DELTA_ENTRY_SIZE = 37;
+
+	private final ByteBuffer ring;
+	private final int nBalls;
+	private final int maxFrameSize;
+	private final int snapshotInterval;
+	/* whether each ball had stopped at the last recorded time step */
+	private final boolean[] wasStopped;
+
+	/* circular index of the frames in the ring, oldest first */
+	private final int maxFrames;
+	private final int[] frameOffsets;
+	private final int[] frameLengths;
+	private int head = 0;
+	private int nFrames = 0;
+	private int firstTick;
+	private int writePos = 0;
+	/* frames since the last snapshot, counting the snapshot itself */
+	private int ticksSinceSnapshot = 0;
+
+	/**
+	 * Creates a RewindBuffer, allocating all of the memory it will use.
+	 * @param nBalls the number of balls in the simulation.
+	 * @param budget the size of the ring in bytes.
+	 * @param maxTicks the greatest number of time steps to keep.
+	 * @param snapshotInterval the number of time steps between snapshots.
+	 * @throws IllegalArgumentException if the budget cannot hold at least
+	 * two time steps.
+	 */
+	public RewindBuffer(int nBalls, int budget, int maxTicks,
+	                    int snapshotInterval)
+	{
+		this.nBalls = nBalls;
+		this.snapshotInterval = snapshotInterval;
+		maxFrameSize = HEADER_SIZE + nBalls * DELTA_ENTRY_SIZE;
+		if (budget < 2 * maxFrameSize) {
+			throw new IllegalArgumentException("A rewind budget of " + budget
+			                                   + " bytes is too small for "
+			                                   + nBalls + " balls");
+		}
+		ring = ByteBuffer.allocate(budget);
+		wasStopped = new boolean[nBalls];
+		maxFrames = maxTicks + 1;
+		frameOffsets = new int[maxFrames];
+		frameLengths = new int[maxFrames];
+	}
+
+	/**
+	 * @return the number of balls the buffer was made for.
+	 */
+	public int getBallCount()
+	{
+		return nBalls;
+	}
+
+	/**
+	 * @return the earliest time step which can be rewound to.
+	 */
+	public int getFirstTick()
+	{
+		return firstTick;
+	}
+
+	/**
+	 * @return the latest time step which can be rewound to.
+	 */
+	public int getLastTick()
+	{
+		return firstTick + nFrames - 1;
+	}
+
+	/**
+	 * Throws away all history and records the current state as a snapshot.
+	 * @param data the DataAnalyser of the simulation.
+	 * @param pages the balls, in pages.
+	 */
+	public void reset(DataAnalyser data, Ball[][] pages)
+	{
+		nFrames = 0;
+		record(data, pages);
+	}
+
+	/**
+	 * Records the state of the simulation at its current time step.
+	 * @param data the DataAnalyser of the simulation.
+	 * @param pages the balls, in pages.
+	 */
+	public void record(DataAnalyser data, Ball[][] pages)
+	{
+		int tick = data.getSimTime();
+		if (nFrames > 0 && tick != firstTick + nFrames) {
+			nFrames = 0;
+		}
+		makeRoom();
+		if (nFrames == 0) {
+			firstTick = tick;
+			ticksSinceSnapshot = snapshotInterval;
+		}
+
+		boolean isSnapshot = ticksSinceSnapshot >= snapshotInterval;
+		int start = writePos;
+		int pos = start + HEADER_SIZE;
+		int count = 0;
+		int i = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				if (isSnapshot || !wasStopped[i]) {
+					if (!isSnapshot) {
+						ring.putInt(pos, i);
+						pos += 4;
+					}
+					pos = putBall(pos, ball);
+					count++;
+				}
+				wasStopped[i] = ball.isStopped();
+				i++;
+			}
+		}
+		ring.put(start, isSnapshot ? SNAPSHOT : DELTA);
+		ring.putInt(start + 1, tick);
+		ring.putInt(start + 5, data.getStoppedBalls());
+		ring.putInt(start + 9, data.getBallsOffScreen());
+		ring.putInt(start + 13, data.getBallsOnScreen());
+		ring.putInt(start + COUNT_OFFSET, count);
+
+		int slot = (head + nFrames) % maxFrames;
+		frameOffsets[slot] = start;
+		frameLengths[slot] = pos - start;
+		nFrames++;
+		writePos = pos;
+		ticksSinceSnapshot = isSnapshot ? 1 : ticksSinceSnapshot + 1;
+	}
+
+	/**
+	 * Puts the simulation back into its state at an earlier time step and
+	 * forgets everything recorded after it, so that recording carries on
+	 * from there. All of the balls must belong to the caller alone.
+	 * @param tick the time step to rewind to.
+	 * @param data the DataAnalyser of the simulation.
+	 * @param pages the balls, in pages.
+	 * @throws IllegalArgumentException if the time step is not held.
+	 */
+	public void rewind(int tick, DataAnalyser data, Ball[][] pages)
+	{
+		int k = tick - firstTick;
+		if (nFrames == 0 || k < 0 || k >= nFrames) {
+			throw new IllegalArgumentException("Time step " + tick
+			                                   + " is not in the rewind buffer");
+		}
+		int j = k;
+		while (ring.get(frameOffsets[(head + j) % maxFrames]) != SNAPSHOT) {
+			j--;
+		}
+
+		int pageSize = pages[0].length;
+		for (int f = j; f <= k; ++f) {
+			int start = frameOffsets[(head + f) % maxFrames];
+			boolean isSnapshot = ring.get(start) == SNAPSHOT;
+			int count = ring.getInt(start + COUNT_OFFSET);
+			int pos = start + HEADER_SIZE;
+			for (int e = 0; e < count; ++e) {
+				int i = e;
+				if (!isSnapshot) {
+					i = ring.getInt(pos);
+					pos += 4;
+				}
+				pos = getBall(pos, pages[i / pageSize][i % pageSize]);
+			}
+		}
+
+		int start = frameOffsets[(head + k) % maxFrames];
+		data.setCounts(tick, ring.getInt(start + 5), ring.getInt(start + 9),
+		               ring.getInt(start + 13));
+		int i = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				wasStopped[i++] = ball.isStopped();
+			}
+		}
+		nFrames = k + 1;
+		writePos = start + frameLengths[(head + k) % maxFrames];
+		ticksSinceSnapshot = k - j + 1;
+	}
+
+	/**
+	 * Drops the oldest frames until there is room for another frame of the
+	 * largest possible size, leaving writePos where it should go.
+	 */
+	private void makeRoom()
+	{
+		while (nFrames > 0 && (nFrames == maxFrames || !hasRoom())) {
+			/* drop the oldest snapshot and all the deltas that depend on it */
+			do {
+				head = (head + 1) % maxFrames;
+				nFrames--;
+				firstTick++;
+			} while (nFrames > 0 && ring.get(frameOffsets[head]) != SNAPSHOT);
+		}
+		if (nFrames == 0) {
+			writePos = 0;
+		}
+	}
+
+	/**
+	 * Checks whether another frame fits in the ring, moving writePos back to
+	 * the start of the ring if it only fits there.
+	 */
+	private boolean hasRoom()
+	{
+		int headPos = frameOffsets[head];
+		if (writePos > headPos) {
+			if (ring.capacity() - writePos >= maxFrameSize) {
+				return true;
+			}
+			if (headPos >= maxFrameSize) {
+				writePos = 0;
+				return true;
+			}
+			return false;
+		}
+		return headPos - writePos >= maxFrameSize;
+	}
+
+	private int putBall(int pos, Ball ball)
+	{
+		ring.putDouble(pos, ball.getXPos());
+		ring.putDouble(pos + 8, ball.getYPos());
+		ring.putDouble(pos + 16, ball.getXVel());
+		ring.putDouble(pos + 24, ball.getYVel());
+		ring.put(pos + 32, (byte) ball.getFlags());
+		return pos + SNAPSHOT_ENTRY_SIZE;
+	}
+
+	private int getBall(int pos, Ball ball)
+	{
+		ball.setState(ring.getDouble(pos), ring.getDouble(pos + 8),
+		              ring.getDouble(pos + 16), ring.getDouble(pos + 24),
+		              ring.get(pos + 32));
+		return pos + SNAPSHOT_ENTRY_SIZE;
+	}
+
+}
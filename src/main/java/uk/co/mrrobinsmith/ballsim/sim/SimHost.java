@@ -0,0 +1,445 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SimHost runs many independent simulations, or sessions, in one process
+ * without letting any one of them starve the others.
+ *
+ * Each session is driven by a thread of its own, a virtual thread where the
+ * Java runtime has them (see SimThreads), which does nothing but wait. The stepping itself is
+ * done in short slices on a fixed pool of worker threads, one per processor
+ * by default, which all the sessions share; the pool takes slices in the
+ * order they are asked for, so busy sessions take turns.
+ *
+ * Each session has a quota:
+ *
+ * - a CPU share, the fraction of one worker it may use. Its use is measured
+ *   over windows of WINDOW; once it has used its share of a window it waits
+ *   for the next one.
+ * - a memory limit, checked against the simulation's own estimate of its
+ *   size before it is created. The host also has a limit on the total of
+ *   all its sessions, and turns new sessions away when it is reached.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class SimHost
+{
+	/* longest a slice of stepping runs for, in nanoseconds */
+	private static final long SLICE_TIME = 2000000L;
+	/* window CPU use is measured over, in nanoseconds */
+	private static final long WINDOW = 100000000L;
+
+	private final ExecutorService workers;
+	private final long memoryLimit;
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	private final List<Session> sessions = new ArrayList<Session>();
+	private long memoryUsed = 0;
+	private boolean isClosed = false;
+
+	/**
+	 * Creates a SimHost with one worker thread per processor.
+	 * @param memoryLimit the most memory all the sessions together may
+	 * use, in bytes.
+	 */
+	public SimHost(long memoryLimit)
+	{
+		this(Runtime.getRuntime().availableProcessors(), memoryLimit);
+	}
+
+	/**
+	 * Creates a SimHost.
+	 * @param nWorkers the number of worker threads to step sessions on.
+	 * @param memoryLimit the most memory all the sessions together may
+	 * use, in bytes.
+	 */
+	public SimHost(int nWorkers, long memoryLimit)
+	{
+		this.memoryLimit = memoryLimit;
+		workers = Executors.newFixedThreadPool(nWorkers,
+		                                       SimThreads.daemonThreads(
+		                                       "sim-worker"));
+	}
+
+	/**
+	 * Starts a session running a simulation from its initial state, creating
+	 * its objects first. The simulation runs until it is finished by its
+	 * TerminationPolicy, it reaches a number of time steps or the session
+	 * is stopped.
+	 * @param sim the simulation, with its parameters set. It should not be
+	 * used elsewhere while the session runs.
+	 * @param maxTicks the most time steps to run for.
+	 * @param cpuShare the fraction of one worker thread the session may
+	 * use, more than 0 and at most 1.
+	 * @param maxMemory the most memory the session may use, in bytes.
+	 * @return the Session.
+	 * @throws IllegalArgumentException if the simulation needs more memory
+	 * than maxMemory, or the CPU share is out of range.
+	 * @throws IllegalStateException if the host has no memory left for the
+	 * simulation, or is closed.
+	 */
+	public Session open(BallSim sim, int maxTicks, double cpuShare,
+	                    long maxMemory)
+	{
+		return open(sim, maxTicks, cpuShare, maxMemory, true);
+	}
+
+	/**
+	 * Starts a session carrying a simulation on from where it is, without
+	 * creating its objects again; for a simulation which has been run
+	 * before, restored or forked. Otherwise as open.
+	 * @param sim the simulation, with its objects created. It should not be
+	 * used elsewhere while the session runs.
+	 * @param maxTicks the most time steps to run for.
+	 * @param cpuShare the fraction of one worker thread the session may
+	 * use, more than 0 and at most 1.
+	 * @param maxMemory the most memory the session may use, in bytes.
+	 * @return the Session.
+	 * @throws IllegalArgumentException if the simulation needs more memory
+	 * than maxMemory, or the CPU share is out of range.
+	 * @throws IllegalStateException if the host has no memory left for the
+	 * simulation, or is closed.
+	 */
+	public Session resume(BallSim sim, int maxTicks, double cpuShare,
+	                      long maxMemory)
+	{
+		return open(sim, maxTicks, cpuShare, maxMemory, false);
+	}
+
+	/**
+	 * Checks a session's quota and starts it.
+	 * @param sim the simulation.
+	 * @param maxTicks the most time steps to run for.
+	 * @param cpuShare the fraction of one worker thread the session may use.
+	 * @param maxMemory the most memory the session may use, in bytes.
+	 * @param isNew true to create the simulation's objects first.
+	 * @return the Session.
+	 */
+	private Session open(BallSim sim, int maxTicks, double cpuShare,
+	                     long maxMemory, boolean isNew)
+	{
+		if (!(cpuShare > 0.0 && cpuShare <= 1.0)) {
+			throw new IllegalArgumentException("CPU share must be more than 0 "
+			                                   + "and at most 1: " + cpuShare);
+		}
+		long memory = sim.getMemoryEstimate();
+		if (memory > maxMemory) {
+			throw new IllegalArgumentException("simulation needs about "
+			                                   + memory + " bytes, more than "
+			                                   + maxMemory);
+		}
+		Session session;
+		synchronized (this) {
+			if (isClosed) {
+				throw new IllegalStateException("host is closed");
+			}
+			if (memoryUsed + memory > memoryLimit) {
+				throw new IllegalStateException("host has no memory left for "
+				                                + "a simulation of about "
+				                                + memory + " bytes");
+			}
+			memoryUsed += memory;
+			session = new Session(nextId.getAndIncrement(), sim, maxTicks,
+			                      cpuShare, memory, isNew);
+			sessions.add(session);
+		}
+		SimThreads.start(session, "sim-session-" + session.id);
+		return session;
+	}
+
+	/**
+	 * Gets the sessions which have not yet ended.
+	 * @return a list of Sessions.
+	 */
+	public synchronized List<Session> getSessions()
+	{
+		return new ArrayList<Session>(sessions);
+	}
+
+	/**
+	 * Gets the memory reserved by the sessions which have not yet ended.
+	 * @return the memory in bytes.
+	 */
+	public synchronized long getMemoryUsed()
+	{
+		return memoryUsed;
+	}
+
+	/**
+	 * Stops every session, waits for them to end and stops the workers.
+	 * @throws InterruptedException if interrupted while waiting.
+	 */
+	public void close() throws InterruptedException
+	{
+		List<Session> open;
+		synchronized (this) {
+			isClosed = true;
+			open = new ArrayList<Session>(sessions);
+		}
+		for (Session session : open) {
+			session.stop();
+		}
+		for (Session session : open) {
+			session.awaitEnd(0);
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * Removes a session which has ended and frees its memory.
+	 * @param session the session.
+	 */
+	private synchronized void ended(Session session)
+	{
+		if (sessions.remove(session)) {
+			memoryUsed -= session.memory;
+		}
+	}
+
+	/************************************************************************
+	 * Inner class Session - one simulation run by the host, and the driver
+	 * which runs it.
+	 */
+	public class Session implements Runnable
+	{
+		private final int id;
+		private final BallSim sim;
+		private final int maxTicks;
+		private final double cpuShare;
+		private final long memory;
+		private final boolean isNew;
+
+		private volatile boolean isStopped = false;
+		private volatile boolean hasEnded = false;
+		private volatile int ticksRun = 0;
+		private volatile long cpuTime = 0;
+		private volatile long waitTime = 0;
+		private volatile Throwable failure;
+		/* time the last slice spent on a worker, in nanoseconds */
+		private long sliceNanos;
+
+		/**
+		 * Creates a Session.
+		 * @param id the session number.
+		 * @param sim the simulation.
+		 * @param maxTicks the most time steps to run for.
+		 * @param cpuShare the fraction of one worker the session may use.
+		 * @param memory the memory reserved for the session.
+		 * @param isNew true to create the simulation's objects first.
+		 */
+		private Session(int id, BallSim sim, int maxTicks, double cpuShare,
+		                long memory, boolean isNew)
+		{
+			this.id = id;
+			this.sim = sim;
+			this.maxTicks = maxTicks;
+			this.cpuShare = cpuShare;
+			this.memory = memory;
+			this.isNew = isNew;
+		}
+
+		/**
+		 * Gets the session number.
+		 * @return the number.
+		 */
+		public int getId()
+		{
+			return id;
+		}
+
+		/**
+		 * Gets the simulation the session runs.
+		 * @return the BallSim.
+		 */
+		public BallSim getSim()
+		{
+			return sim;
+		}
+
+		/**
+		 * Gets the number of time steps run so far.
+		 * @return the number.
+		 */
+		public int getTicksRun()
+		{
+			return ticksRun;
+		}
+
+		/**
+		 * Gets the time spent stepping the simulation on the workers.
+		 * @return the time in nanoseconds.
+		 */
+		public long getCpuTime()
+		{
+			return cpuTime;
+		}
+
+		/**
+		 * Gets the time spent waiting because the CPU share was used up.
+		 * @return the time in nanoseconds.
+		 */
+		public long getThrottledTime()
+		{
+			return waitTime;
+		}
+
+		/**
+		 * Checks whether the session has ended.
+		 * @return true if it has ended, false otherwise.
+		 */
+		public boolean hasEnded()
+		{
+			return hasEnded;
+		}
+
+		/**
+		 * Gets what stopped the session if it failed.
+		 * @return the Throwable, or null if it has not failed.
+		 */
+		public Throwable getFailure()
+		{
+			return failure;
+		}
+
+		/**
+		 * Asks the session to stop after its current slice.
+		 */
+		public void stop()
+		{
+			isStopped = true;
+		}
+
+		/**
+		 * Waits for the session to end.
+		 * @param timeout the longest to wait in milliseconds, or 0 for ever.
+		 * @return true if the session has ended, false otherwise.
+		 * @throws InterruptedException if interrupted while waiting.
+		 */
+		public boolean awaitEnd(long timeout) throws InterruptedException
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+			synchronized (this) {
+				while (!hasEnded) {
+					long wait = 0;
+					if (timeout > 0) {
+						wait = deadline - System.currentTimeMillis();
+						if (wait <= 0) {
+							return false;
+						}
+					}
+					wait(wait);
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Drives the session: hands slices of stepping to the workers one at
+		 * a time, and waits whenever the CPU share is used up.
+		 */
+		public void run()
+		{
+			try {
+				runSlice(new Callable<Integer>() {
+					public Integer call() {
+						if (isNew) {
+							sim.createObjects();
+						}
+						sim.beginRun();
+						return 0;
+					}
+				});
+				long windowStart = System.nanoTime();
+				long used = 0;
+				long budget = (long) (cpuShare * WINDOW);
+				while (!isStopped && ticksRun < maxTicks && !isFinished()) {
+					final int n = maxTicks - ticksRun;
+					int ran = runSlice(new Callable<Integer>() {
+						public Integer call() {
+							return sim.continueFor(n, SLICE_TIME);
+						}
+					});
+					long sliceTime = sliceNanos;
+					ticksRun += ran;
+					cpuTime += sliceTime;
+					used += sliceTime;
+
+					long now = System.nanoTime();
+					if (now - windowStart >= WINDOW) {
+						windowStart = now;
+						used = 0;
+					}
+					else if (used >= budget) {
+						long wait = windowStart + WINDOW - now;
+						TimeUnit.NANOSECONDS.sleep(wait);
+						waitTime += wait;
+						windowStart = System.nanoTime();
+						used = 0;
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				failure = e.getCause();
+			}
+			finally {
+				ended(this);
+				synchronized (this) {
+					hasEnded = true;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Runs a slice of work on a worker and waits for it.
+		 * @param slice the work.
+		 * @return the result of the work.
+		 * @throws InterruptedException if interrupted while waiting.
+		 * @throws ExecutionException if the work failed.
+		 */
+		private int runSlice(final Callable<Integer> slice)
+			throws InterruptedException, ExecutionException
+		{
+			final long[] time = new long[1];
+			Future<Integer> result = workers.submit(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					long start = System.nanoTime();
+					try {
+						return slice.call();
+					}
+					finally {
+						time[0] = System.nanoTime() - start;
+					}
+				}
+			});
+			int value = result.get();
+			sliceNanos = time[0];
+			return value;
+		}
+
+		/**
+		 * Checks whether the simulation's TerminationPolicy has found it
+		 * finished.
+		 * @return true if it is finished, false otherwise.
+		 */
+		private boolean isFinished()
+		{
+			return sim.getTerminationPolicy().getReason()
+			       != TerminationPolicy.NOT_FINISHED;
+		}
+	}
+
+}
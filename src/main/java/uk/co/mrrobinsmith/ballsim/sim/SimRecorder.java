@@ -0,0 +1,31 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.IOException;
+
+/**
+ * SimRecorder is implemented by classes which record the state of the balls
+ * of a BallSim at every time step. A SimRecorder is attached to a simulation
+ * using BallSim.addRecorder() and is called on the simulation thread after
+ * each time step.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public interface SimRecorder
+{
+
+	/**
+	 * Records the state of the balls at a time step.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages; they must not be changed.
+	 */
+	public void record(int tick, Ball[][] pages);
+
+	/**
+	 * Finishes the recording.
+	 * @throws IOException if the recording could not be written.
+	 */
+	public void close() throws IOException;
+
+}
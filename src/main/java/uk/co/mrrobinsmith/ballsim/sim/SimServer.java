@@ -0,0 +1,940 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * SimServer is a small HTTP server for watching and steering simulations
+ * which run without a display. It only listens on the loopback address, so
+ * it can only be reached from the machine it runs on.
+ *
+ * Each simulation is a run with a number. The endpoints are:
+ *
+ *   GET  /runs                    list the runs
+ *   POST /runs                    create and start a run; the body may be a
+ *                                 JSON object of parameter values, and
+ *                                 ?cpu= its CPU share
+ *   POST /runs/{id}/start         start a stopped run from where it
+ *                                 stopped, with ?cpu= its CPU share
+ *   POST /runs/{id}/stop          stop a run
+ *   POST /runs/{id}/fork          fork a run into a new, stopped run
+ *   GET  /runs/{id}/params        get a run's parameters
+ *   POST /runs/{id}/params        set adjustable parameters from a JSON
+ *                                 object
+ *   GET  /runs/{id}/data          get a run's data values
+ *   GET  /runs/{id}/data/stream   stream the data values as one JSON
+ *                                 object per line, every ?interval= ms
+ *   GET  /metrics                 time step latency and throughput of every
+ *                                 run, in the Prometheus text format
+ *
+ * Requests are handled on virtual threads where the Java runtime has them,
+ * and on a pool of threads otherwise. Runs are run as sessions of a SimHost,
+ * so they step as fast as their CPU share allows, a fraction of one
+ * processor, and only start while the host has memory left for them.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class SimServer
+{
+	private static final String JSON = "application/json";
+	private static final String PROMETHEUS = "text/plain; version=0.0.4";
+	private static final int DEFAULT_INTERVAL = 1000;
+	private static final int MIN_INTERVAL = 50;
+	/* largest request body read, in bytes */
+	private static final int MAX_BODY = 65536;
+	/* CPU share of a run not given one */
+	private static final double DEFAULT_CPU_SHARE = 0.5;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final SimHost host;
+	/* most memory a run may use, in bytes */
+	private final long runMemory;
+	private final Map<Integer, SimRun> runs =
+		new ConcurrentHashMap<Integer, SimRun>();
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	private volatile boolean isStopped = false;
+
+	/**
+	 * Creates a SimServer listening on a port of the loopback address. It
+	 * does not handle requests until started.
+	 * @param port the port, or 0 for any free port.
+	 * @throws IOException if the port could not be bound.
+	 */
+	public SimServer(int port) throws IOException
+	{
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		server = HttpServer.create(new InetSocketAddress(loopback, port), 0);
+		executor = SimThreads.newPerTaskExecutor("sim-server");
+		server.setExecutor(executor);
+		runMemory = Runtime.getRuntime().maxMemory() / 2;
+		host = new SimHost(runMemory);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				dispatch(exchange);
+			}
+		});
+	}
+
+	/**
+	 * Gets the port the server is listening on.
+	 * @return the port.
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Starts handling requests.
+	 */
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * Stops handling requests and stops every run.
+	 */
+	public void stop()
+	{
+		isStopped = true;
+		server.stop(0);
+		for (SimRun run : runs.values()) {
+			run.stop();
+		}
+		try {
+			host.close();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Passes a request to the method for its path.
+	 * @param exchange the request and its response.
+	 * @throws IOException if the response could not be sent.
+	 */
+	private void dispatch(HttpExchange exchange) throws IOException
+	{
+		try {
+			String method = exchange.getRequestMethod();
+			String[] path = splitPath(exchange.getRequestURI().getPath());
+			if (path.length == 1 && path[0].equals("metrics")) {
+				requireMethod(method, "GET");
+				send(exchange, 200, PROMETHEUS, metrics());
+			}
+			else if (path.length == 1 && path[0].equals("runs")) {
+				if (method.equals("POST")) {
+					send(exchange, 201, JSON,
+					     createRun(readBody(exchange), getCpuShare(exchange)));
+				}
+				else {
+					requireMethod(method, "GET");
+					send(exchange, 200, JSON, listRuns());
+				}
+			}
+			else if (path.length >= 3 && path[0].equals("runs")) {
+				SimRun run = getRun(path[1]);
+				String action = path[2];
+				if (path.length == 4 && action.equals("data")
+				    && path[3].equals("stream")) {
+					requireMethod(method, "GET");
+					streamData(exchange, run);
+				}
+				else if (path.length > 3) {
+					throw new HttpError(404, "no such endpoint");
+				}
+				else if (action.equals("start")) {
+					requireMethod(method, "POST");
+					if (!run.start(host, getCpuShare(exchange), runMemory)) {
+						throw new HttpError(409, "run is already running");
+					}
+					send(exchange, 200, JSON, describe(run));
+				}
+				else if (action.equals("stop")) {
+					requireMethod(method, "POST");
+					run.stop();
+					send(exchange, 200, JSON, describe(run));
+				}
+				else if (action.equals("fork")) {
+					requireMethod(method, "POST");
+					SimRun branch = addRun(run.sim.fork());
+					send(exchange, 201, JSON, describe(branch));
+				}
+				else if (action.equals("params")) {
+					if (method.equals("POST")) {
+						setParams(run, parseObject(readBody(exchange)));
+					}
+					else {
+						requireMethod(method, "GET");
+					}
+					send(exchange, 200, JSON, paramsToJson(run));
+				}
+				else if (action.equals("data")) {
+					requireMethod(method, "GET");
+					send(exchange, 200, JSON, dataToJson(run));
+				}
+				else {
+					throw new HttpError(404, "no such endpoint");
+				}
+			}
+			else {
+				throw new HttpError(404, "no such endpoint");
+			}
+		}
+		catch (HttpError e) {
+			send(exchange, e.status, JSON,
+			     "{\"error\":" + quote(e.getMessage()) + "}");
+		}
+		catch (RuntimeException e) {
+			/* a stream already under way cannot be given a status */
+			if (exchange.getResponseCode() == -1) {
+				send(exchange, 500, JSON,
+				     "{\"error\":" + quote(e.toString()) + "}");
+			}
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * Creates a run, sets its parameters, creates its objects and starts it.
+	 * @param body a JSON object of parameter values, or an empty String.
+	 * @param cpuShare the run's CPU share.
+	 * @return a JSON description of the run.
+	 * @throws HttpError if a parameter value is not valid, or the run could
+	 * not be started.
+	 */
+	private String createRun(String body, double cpuShare) throws HttpError
+	{
+		BallSim sim = new BallSim(null);
+		if (body.trim().length() > 0) {
+			Map<String, String> values = parseObject(body);
+			for (Map.Entry<String, String> entry : values.entrySet()) {
+				setParam(sim.getSimParams(), entry.getKey(), entry.getValue());
+			}
+		}
+		sim.createObjects();
+		SimRun run = addRun(sim);
+		try {
+			run.start(host, cpuShare, runMemory);
+		}
+		catch (HttpError e) {
+			runs.remove(run.id);
+			throw e;
+		}
+		return describe(run);
+	}
+
+	/**
+	 * Gives a simulation a run number and adds it to the runs.
+	 * @param sim the simulation.
+	 * @return the new run.
+	 */
+	private SimRun addRun(BallSim sim)
+	{
+		SimRun run = new SimRun(nextId.getAndIncrement(), sim);
+		runs.put(run.id, run);
+		return run;
+	}
+
+	/**
+	 * Finds a run by its number.
+	 * @param id the run number, as a String.
+	 * @return the run.
+	 * @throws HttpError if there is no such run.
+	 */
+	private SimRun getRun(String id) throws HttpError
+	{
+		SimRun run = null;
+		try {
+			run = runs.get(Integer.valueOf(id));
+		}
+		catch (NumberFormatException e) {
+			/* not a run number */
+		}
+		if (run == null) {
+			throw new HttpError(404, "no such run " + id);
+		}
+		return run;
+	}
+
+	/**
+	 * Sets adjustable parameters of a run.
+	 * @param run the run.
+	 * @param values the parameter values by name.
+	 * @throws HttpError if a parameter is unknown, not adjustable or given
+	 * a value which is not valid.
+	 */
+	private void setParams(SimRun run, Map<String, String> values)
+		throws HttpError
+	{
+		Parameter[] params = run.sim.getSimParams();
+		/* check every setting before changing any */
+		for (String name : values.keySet()) {
+			Parameter param = findParam(params, name);
+			if (!param.isAdjustable()) {
+				throw new HttpError(409, param.getName()
+				                    + " cannot be changed once a run exists");
+			}
+		}
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			setParam(params, entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * Sets a parameter from a String value.
+	 * @param params the parameters.
+	 * @param name the name of the parameter.
+	 * @param value the value.
+	 * @throws HttpError if the parameter is unknown or the value not valid.
+	 */
+	private static void setParam(Parameter[] params, String name, String value)
+		throws HttpError
+	{
+		Parameter param = findParam(params, name);
+		String old = param.getValueString();
+		try {
+			param.setValue(value);
+		}
+		catch (NumberFormatException e) {
+			throw new HttpError(400, "bad value for " + param.getName() + ": "
+			                    + value);
+		}
+		if (param.getValueString() == null) {
+			param.setValue(old);
+			throw new HttpError(400, "bad value for " + param.getName() + ": "
+			                    + value);
+		}
+	}
+
+	/**
+	 * Finds a parameter by name, ignoring case.
+	 * @param params the parameters.
+	 * @param name the name.
+	 * @return the parameter.
+	 * @throws HttpError if there is no such parameter.
+	 */
+	private static Parameter findParam(Parameter[] params, String name)
+		throws HttpError
+	{
+		for (Parameter param : params) {
+			if (param.getName().equalsIgnoreCase(name)) {
+				return param;
+			}
+		}
+		throw new HttpError(400, "unknown parameter " + name);
+	}
+
+	/**
+	 * Gets the CPU share asked for by a request's ?cpu= value.
+	 * @param exchange the request.
+	 * @return the share, or DEFAULT_CPU_SHARE if none is asked for.
+	 * @throws HttpError if the share is not more than 0 and at most 1.
+	 */
+	private static double getCpuShare(HttpExchange exchange) throws HttpError
+	{
+		String value = getQueryValue(exchange, "cpu");
+		if (value == null) {
+			return DEFAULT_CPU_SHARE;
+		}
+		double share = Double.NaN;
+		try {
+			share = Double.parseDouble(value);
+		}
+		catch (NumberFormatException e) {
+			/* reported below */
+		}
+		if (!(share > 0.0 && share <= 1.0)) {
+			throw new HttpError(400, "bad CPU share " + value);
+		}
+		return share;
+	}
+
+	/**
+	 * Gets a value from a request's query string.
+	 * @param exchange the request.
+	 * @param name the name of the value.
+	 * @return the value, or null if there is none.
+	 */
+	private static String getQueryValue(HttpExchange exchange, String name)
+	{
+		String query = exchange.getRequestURI().getQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				if (pair.startsWith(name + "=")) {
+					return pair.substring(name.length() + 1);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Streams a run's data values, one JSON object per line, until the
+	 * client goes away or the server stops.
+	 * @param exchange the request and its response.
+	 * @param run the run.
+	 * @throws HttpError if the interval is not valid.
+	 * @throws IOException if the response could not be started.
+	 */
+	private void streamData(HttpExchange exchange, SimRun run)
+		throws HttpError, IOException
+	{
+		int interval = DEFAULT_INTERVAL;
+		String value = getQueryValue(exchange, "interval");
+		if (value != null) {
+			try {
+				interval = Integer.parseInt(value);
+			}
+			catch (NumberFormatException e) {
+				throw new HttpError(400, "bad interval " + value);
+			}
+		}
+		interval = Math.max(MIN_INTERVAL, interval);
+
+		exchange.getResponseHeaders().set("Content-Type",
+		                                  "application/x-ndjson");
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			while (!isStopped) {
+				out.write((dataToJson(run) + "\n")
+				          .getBytes(StandardCharsets.UTF_8));
+				out.flush();
+				Thread.sleep(interval);
+			}
+		}
+		catch (IOException e) {
+			/* the client has gone away */
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Describes every run.
+	 * @return a JSON array.
+	 */
+	private String listRuns()
+	{
+		List<Integer> ids = new ArrayList<Integer>(runs.keySet());
+		Collections.sort(ids);
+		StringBuilder s = new StringBuilder("[");
+		for (Integer id : ids) {
+			if (s.length() > 1) {
+				s.append(',');
+			}
+			s.append(describe(runs.get(id)));
+		}
+		return s.append(']').toString();
+	}
+
+	/**
+	 * Describes a run.
+	 * @param run the run.
+	 * @return a JSON object.
+	 */
+	private static String describe(SimRun run)
+	{
+		return "{\"id\":" + run.id + ",\"running\":" + run.isRunning()
+		       + ",\"simTime\":" + run.getSimTime() + "}";
+	}
+
+	/**
+	 * Writes a run's parameters as JSON.
+	 * @param run the run.
+	 * @return a JSON object of objects with the value of each parameter and
+	 * whether it can be changed.
+	 */
+	private static String paramsToJson(SimRun run)
+	{
+		StringBuilder s = new StringBuilder("{");
+		for (Parameter param : run.sim.getSimParams()) {
+			if (s.length() > 1) {
+				s.append(',');
+			}
+			s.append(quote(param.getName())).append(":{\"value\":");
+			appendValue(s, param);
+			s.append(",\"adjustable\":").append(param.isAdjustable())
+			 .append('}');
+		}
+		return s.append('}').toString();
+	}
+
+	/**
+	 * Writes a run's data values as JSON.
+	 * @param run the run.
+	 * @return a JSON object.
+	 */
+	private static String dataToJson(SimRun run)
+	{
+		StringBuilder s = new StringBuilder("{\"id\":").append(run.id);
+		s.append(",\"running\":").append(run.isRunning());
+		for (Parameter param : run.sim.getResults()) {
+			s.append(',').append(quote(param.getName())).append(':');
+			appendValue(s, param);
+		}
+		return s.append('}').toString();
+	}
+
+	/**
+	 * Writes the time step latency and throughput of every run in the
+	 * Prometheus text format.
+	 * @return the metrics.
+	 */
+	private String metrics()
+	{
+		StringBuilder s = new StringBuilder();
+		s.append("# HELP ballsim_tick_seconds Time to simulate a time step.\n");
+		s.append("# TYPE ballsim_tick_seconds summary\n");
+		for (SimRun run : runs.values()) {
+			LogLinearHistogram h = run.sim.getTimer()
+			                          .getHistogram(PhaseTimer.STEP);
+			String label = "run=\"" + run.id + "\"";
+			for (double q : new double[] {0.5, 0.9, 0.99}) {
+				s.append("ballsim_tick_seconds{").append(label)
+				 .append(",quantile=\"").append(q).append("\"} ")
+				 .append(h.getPercentile(q * 100.0) / 1.0e9).append('\n');
+			}
+			s.append("ballsim_tick_seconds_count{").append(label).append("} ")
+			 .append(h.getCount()).append('\n');
+		}
+		s.append("# HELP ballsim_tick_seconds_max Longest time step.\n");
+		s.append("# TYPE ballsim_tick_seconds_max gauge\n");
+		for (SimRun run : runs.values()) {
+			LogLinearHistogram h = run.sim.getTimer()
+			                          .getHistogram(PhaseTimer.STEP);
+			s.append("ballsim_tick_seconds_max{run=\"").append(run.id)
+			 .append("\"} ").append(h.getMax() / 1.0e9).append('\n');
+		}
+		s.append("# HELP ballsim_ticks_total Simulation time reached, in time "
+		         + "steps.\n");
+		s.append("# TYPE ballsim_ticks_total counter\n");
+		for (SimRun run : runs.values()) {
+			s.append("ballsim_ticks_total{run=\"").append(run.id)
+			 .append("\"} ").append(run.getSimTime()).append('\n');
+		}
+		s.append("# HELP ballsim_ticks_per_second Recent time steps per "
+		         + "second.\n");
+		s.append("# TYPE ballsim_ticks_per_second gauge\n");
+		for (SimRun run : runs.values()) {
+			s.append("ballsim_ticks_per_second{run=\"").append(run.id)
+			 .append("\"} ").append(run.getTickRate()).append('\n');
+		}
+		s.append("# HELP ballsim_running Whether a run is running.\n");
+		s.append("# TYPE ballsim_running gauge\n");
+		for (SimRun run : runs.values()) {
+			s.append("ballsim_running{run=\"").append(run.id).append("\"} ")
+			 .append(run.isRunning() ? 1 : 0).append('\n');
+		}
+		return s.toString();
+	}
+
+	/**
+	 * Appends a parameter's value as a JSON value.
+	 * @param s the JSON being written.
+	 * @param param the parameter.
+	 */
+	private static void appendValue(StringBuilder s, Parameter param)
+	{
+		String value = param.getValueString();
+		if (param instanceof IntParameter || param instanceof DoubleParameter
+		    || param instanceof BooleanParameter) {
+			s.append(value);
+		}
+		else {
+			s.append(quote(value));
+		}
+	}
+
+	/**
+	 * Quotes a String as a JSON string.
+	 * @param value the String.
+	 * @return the JSON string.
+	 */
+	private static String quote(String value)
+	{
+		if (value == null) {
+			return "null";
+		}
+		StringBuilder s = new StringBuilder("\"");
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				s.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				s.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				s.append(c);
+			}
+		}
+		return s.append('"').toString();
+	}
+
+	/**
+	 * Parses a flat JSON object whose values are strings, numbers or
+	 * booleans.
+	 * @param json the JSON.
+	 * @return the values by name, as Strings, in the order given.
+	 * @throws HttpError if the JSON is not such an object.
+	 */
+	static Map<String, String> parseObject(String json) throws HttpError
+	{
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		int[] pos = {skipSpace(json, 0)};
+		expect(json, pos, '{');
+		if (peek(json, pos) == '}') {
+			pos[0]++;
+		}
+		else {
+			while (true) {
+				String name = parseString(json, pos);
+				expect(json, pos, ':');
+				String value;
+				if (peek(json, pos) == '"') {
+					value = parseString(json, pos);
+				}
+				else {
+					int start = pos[0];
+					while (pos[0] < json.length()
+					       && ",} \t\r\n".indexOf(json.charAt(pos[0])) < 0) {
+						pos[0]++;
+					}
+					value = json.substring(start, pos[0]);
+					if (value.length() == 0) {
+						throw new HttpError(400, "bad JSON value");
+					}
+				}
+				values.put(name, value);
+				char c = peek(json, pos);
+				pos[0]++;
+				if (c == '}') {
+					break;
+				}
+				if (c != ',') {
+					throw new HttpError(400, "bad JSON object");
+				}
+			}
+		}
+		if (skipSpace(json, pos[0]) != json.length()) {
+			throw new HttpError(400, "bad JSON object");
+		}
+		return values;
+	}
+
+	/**
+	 * Parses a JSON string.
+	 * @param json the JSON.
+	 * @param pos the position to start at, moved past the string.
+	 * @return the string.
+	 * @throws HttpError if there is no string there.
+	 */
+	private static String parseString(String json, int[] pos)
+		throws HttpError
+	{
+		expect(json, pos, '"');
+		StringBuilder s = new StringBuilder();
+		while (pos[0] < json.length()) {
+			char c = json.charAt(pos[0]++);
+			if (c == '"') {
+				return s.toString();
+			}
+			if (c == '\\' && pos[0] < json.length()) {
+				c = json.charAt(pos[0]++);
+				if (c == 'u' && pos[0] + 4 <= json.length()) {
+					try {
+						c = (char) Integer.parseInt(
+						        json.substring(pos[0], pos[0] + 4), 16);
+					}
+					catch (NumberFormatException e) {
+						throw new HttpError(400, "bad JSON escape");
+					}
+					pos[0] += 4;
+				}
+				else if (c == 'n') {
+					c = '\n';
+				}
+				else if (c == 't') {
+					c = '\t';
+				}
+			}
+			s.append(c);
+		}
+		throw new HttpError(400, "unterminated JSON string");
+	}
+
+	/**
+	 * Skips whitespace and checks for a character.
+	 * @param json the JSON.
+	 * @param pos the position, moved past the character.
+	 * @param c the character.
+	 * @throws HttpError if the character is not there.
+	 */
+	private static void expect(String json, int[] pos, char c)
+		throws HttpError
+	{
+		if (peek(json, pos) != c) {
+			throw new HttpError(400, "expected " + c + " in JSON");
+		}
+		pos[0]++;
+	}
+
+	/**
+	 * Skips whitespace and gets the next character.
+	 * @param json the JSON.
+	 * @param pos the position, moved past the whitespace.
+	 * @return the character, or 0 at the end.
+	 */
+	private static char peek(String json, int[] pos)
+	{
+		pos[0] = skipSpace(json, pos[0]);
+		return (pos[0] < json.length()) ? json.charAt(pos[0]) : 0;
+	}
+
+	/**
+	 * Skips whitespace.
+	 * @param json the JSON.
+	 * @param pos the position to start at.
+	 * @return the position of the next character which is not whitespace.
+	 */
+	private static int skipSpace(String json, int pos)
+	{
+		while (pos < json.length()
+		       && Character.isWhitespace(json.charAt(pos))) {
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Checks a request's method.
+	 * @param method the request's method.
+	 * @param expected the method the endpoint takes.
+	 * @throws HttpError if they differ.
+	 */
+	private static void requireMethod(String method, String expected)
+		throws HttpError
+	{
+		if (!method.equals(expected)) {
+			throw new HttpError(405, "use " + expected);
+		}
+	}
+
+	/**
+	 * Reads a request's body.
+	 * @param exchange the request.
+	 * @return the body.
+	 * @throws HttpError if it is too long.
+	 * @throws IOException if it could not be read.
+	 */
+	private static String readBody(HttpExchange exchange)
+		throws HttpError, IOException
+	{
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			body.write(buffer, 0, n);
+			if (body.size() > MAX_BODY) {
+				throw new HttpError(413, "request body too large");
+			}
+		}
+		return new String(body.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends a whole response.
+	 * @param exchange the request and its response.
+	 * @param status the HTTP status code.
+	 * @param type the content type.
+	 * @param body the body.
+	 * @throws IOException if the response could not be sent.
+	 */
+	private static void send(HttpExchange exchange, int status, String type,
+	                         String body) throws IOException
+	{
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.flush();
+	}
+
+	/**
+	 * Splits a path into its non-empty parts.
+	 * @param path the path.
+	 * @return the parts.
+	 */
+	private static String[] splitPath(String path)
+	{
+		List<String> parts = new ArrayList<String>();
+		for (String part : path.split("/")) {
+			if (part.length() > 0) {
+				parts.add(part);
+			}
+		}
+		return parts.toArray(new String[parts.size()]);
+	}
+
+	/************************************************************************
+	 * Inner class SimRun - a simulation run by the server, with the SimHost
+	 * session it runs in.
+	 */
+	private static class SimRun
+	{
+		private final int id;
+		private final BallSim sim;
+		private SimHost.Session session;
+		/* sim time and real time when the tick rate was last measured */
+		private int lastTicks;
+		private long lastTime = System.nanoTime();
+		private double tickRate = 0.0;
+
+		/**
+		 * Creates a SimRun for a simulation.
+		 * @param id the run number.
+		 * @param sim the simulation.
+		 */
+		SimRun(int id, BallSim sim)
+		{
+			this.id = id;
+			this.sim = sim;
+			lastTicks = getSimTime();
+		}
+
+		/**
+		 * Starts the simulation, from where it is, in a session of a host.
+		 * The session is made before its driver thread starts, so a stop
+		 * asked for straight away is never lost.
+		 * @param host the SimHost.
+		 * @param cpuShare the fraction of one worker the run may use.
+		 * @param maxMemory the most memory the run may use, in bytes.
+		 * @return false if it was already running, true otherwise.
+		 * @throws HttpError if the host has no room for the run.
+		 */
+		synchronized boolean start(SimHost host, double cpuShare,
+		                           long maxMemory) throws HttpError
+		{
+			if (session != null && !session.hasEnded()) {
+				return false;
+			}
+			try {
+				session = host.resume(sim, Integer.MAX_VALUE, cpuShare,
+				                      maxMemory);
+			}
+			catch (IllegalArgumentException e) {
+				throw new HttpError(413, e.getMessage());
+			}
+			catch (IllegalStateException e) {
+				throw new HttpError(503, e.getMessage());
+			}
+			return true;
+		}
+
+		/**
+		 * Checks whether the simulation's session is running it.
+		 * @return true if it is running, false otherwise.
+		 */
+		synchronized boolean isRunning()
+		{
+			return session != null && !session.hasEnded();
+		}
+
+		/**
+		 * Stops the simulation, waiting for its session to end. The session
+		 * checks for the stop before each slice of stepping.
+		 */
+		synchronized void stop()
+		{
+			if (session != null) {
+				session.stop();
+				try {
+					session.awaitEnd(TimeUnit.SECONDS.toMillis(5));
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		/**
+		 * Gets the simulation time.
+		 * @return the time step.
+		 */
+		int getSimTime()
+		{
+			return sim.getSimTime();
+		}
+
+		/**
+		 * Gets the number of time steps per second since this was last
+		 * asked, or over the last second if asked more often.
+		 * @return the rate.
+		 */
+		synchronized double getTickRate()
+		{
+			long now = System.nanoTime();
+			if (now - lastTime >= 1000000000L) {
+				int ticks = getSimTime();
+				tickRate = (ticks - lastTicks) * 1.0e9 / (now - lastTime);
+				lastTicks = ticks;
+				lastTime = now;
+			}
+			return tickRate;
+		}
+	}
+
+	/************************************************************************
+	 * Inner class HttpError - an error to be sent back as an HTTP status.
+	 */
+	static class HttpError extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+		private final int status;
+
+		/**
+		 * Creates an HttpError.
+		 * @param status the HTTP status code.
+		 * @param message the message sent to the client.
+		 */
+		HttpError(int status, String message)
+		{
+			super(message);
+			this.status = status;
+		}
+	}
+
+}
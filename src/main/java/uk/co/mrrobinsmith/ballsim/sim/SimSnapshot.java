@@ -0,0 +1,130 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.awt.Color;
+
+/**
+ * SimSnapshot holds everything needed to draw a simulation at one time step,
+ * copied out of the simulation so that it can be drawn on another thread
+ * while the simulation carries on. Snapshots are passed from the simulation
+ * to the Renderer through a TripleBuffer and reused, so their arrays are
+ * only reallocated when the number of balls grows.
+ *
+ * A snapshot also holds the ball positions at the time step before, and how
+ * far the simulation's clock had got towards the next time step when it was
+ * published, so that the Renderer can draw the balls part way between the
+ * two time steps.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+class SimSnapshot
+{
+	int tick;
+	int nBalls;
+	float[] x = new float[0];
+	float[] y = new float[0];
+	boolean[] onScreen = new boolean[0];
+	/* positions at the time step before, if interpolate is true */
+	float[] prevX = new float[0];
+	float[] prevY = new float[0];
+	boolean interpolate;
+	/* System.nanoTime() when published */
+	long publishTime;
+	/* time already accumulated towards the next time step when published */
+	long remainder;
+	/* length of a time step in real time, in nanoseconds */
+	long tickTime;
+	/* length of a time step in simulated time, in nanoseconds */
+	long nominalTickTime;
+	/* how long the latest time step took to simulate, in nanoseconds */
+	long stepTime;
+	/* number of balls which have not stopped */
+	int activeBalls;
+	/* whether to draw the performance overlay */
+	boolean showHud;
+	int diameter;
+	Color ballColor;
+	Color platformColor;
+	Platform[] platforms;
+
+	/* copies of the trails of the traced balls, laid out as in BallTracer */
+	int nTraced;
+	int trailCapacity;
+	int trailNewest;
+	int trailPoints;
+	float[] trailX = new float[0];
+	float[] trailY = new float[0];
+
+	/**
+	 * Copies the state of the balls into this snapshot.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 * @param n the number of balls.
+	 */
+	void fillBalls(int tick, Ball[][] pages, int n)
+	{
+		this.tick = tick;
+		nBalls = n;
+		if (x.length < n) {
+			x = new float[n];
+			y = new float[n];
+			onScreen = new boolean[n];
+			prevX = new float[n];
+			prevY = new float[n];
+		}
+		int i = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				x[i] = (float) ball.getXPos();
+				y[i] = (float) ball.getYPos();
+				onScreen[i] = !ball.isOffScreen();
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Copies the positions of the balls at the time step before into this
+	 * snapshot, so that it can be interpolated.
+	 * @param px the x positions.
+	 * @param py the y positions.
+	 */
+	void fillPrevious(float[] px, float[] py)
+	{
+		System.arraycopy(px, 0, prevX, 0, nBalls);
+		System.arraycopy(py, 0, prevY, 0, nBalls);
+		interpolate = true;
+	}
+
+	/**
+	 * Gets how far the simulation had got from the time step before this one
+	 * to this one at a given real time.
+	 * @param now the real time, from System.nanoTime().
+	 * @return a fraction from 0 to 1.
+	 */
+	double getAlpha(long now)
+	{
+		if (!interpolate) {
+			return 1.0;
+		}
+		double alpha = (remainder + (now - publishTime)) / (double) tickTime;
+		return Math.max(0.0, Math.min(1.0, alpha));
+	}
+
+	/**
+	 * Makes room for copies of the trails.
+	 * @param nTraced the number of traced balls.
+	 * @param capacity the number of points in each trail's ring.
+	 */
+	void ensureTrailCapacity(int nTraced, int capacity)
+	{
+		this.nTraced = nTraced;
+		trailCapacity = capacity;
+		if (trailX.length < nTraced * capacity) {
+			trailX = new float[nTraced * capacity];
+			trailY = new float[nTraced * capacity];
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SimThreads makes the threads simulations are driven and served on. Where
+ * the Java runtime has virtual threads they are used, for threads which
+ * spend most of their time waiting; otherwise daemon threads are used in
+ * their place.
+ *
+ * Virtual threads need Java 21, and the build targets Java 11, so they are
+ * looked up by reflection, once.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+final class SimThreads
+{
+	/* Thread.startVirtualThread(Runnable), or null */
+	private static final Method START_VIRTUAL =
+		find(Thread.class, "startVirtualThread", Runnable.class);
+	/* Executors.newVirtualThreadPerTaskExecutor(), or null */
+	private static final Method NEW_VIRTUAL_EXECUTOR =
+		find(Executors.class, "newVirtualThreadPerTaskExecutor");
+
+	/**
+	 * Not used; SimThreads only has static methods.
+	 */
+	private SimThreads()
+	{
+	}
+
+	/**
+	 * Starts a thread for a task which mostly waits: a virtual thread if the
+	 * Java runtime has them, otherwise a daemon thread.
+	 * @param task the task.
+	 * @param name the name of the thread.
+	 * @return the Thread.
+	 */
+	static Thread start(Runnable task, String name)
+	{
+		if (START_VIRTUAL != null) {
+			try {
+				Thread t = (Thread) START_VIRTUAL.invoke(null, task);
+				t.setName(name);
+				return t;
+			}
+			catch (ReflectiveOperationException e) {
+				/* fall back to a daemon thread */
+			}
+		}
+		Thread t = new Thread(task, name);
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * Makes an executor which runs each task on a thread of its own: a
+	 * virtual thread if the Java runtime has them, otherwise a pool of
+	 * daemon threads.
+	 * @param prefix the start of the names of the daemon threads.
+	 * @return the ExecutorService.
+	 */
+	static ExecutorService newPerTaskExecutor(String prefix)
+	{
+		if (NEW_VIRTUAL_EXECUTOR != null) {
+			try {
+				return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+			}
+			catch (ReflectiveOperationException e) {
+				/* fall back to a pool of daemon threads */
+			}
+		}
+		return Executors.newCachedThreadPool(daemonThreads(prefix));
+	}
+
+	/**
+	 * Makes a ThreadFactory for numbered daemon threads.
+	 * @param prefix the start of the names of the threads.
+	 * @return the ThreadFactory.
+	 */
+	static ThreadFactory daemonThreads(final String prefix)
+	{
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix + "-"
+				                      + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Looks up a public static method which may not exist.
+	 * @param type the class.
+	 * @param name the name of the method.
+	 * @param params the types of its parameters.
+	 * @return the Method, or null if there is none.
+	 */
+	private static Method find(Class<?> type, String name, Class<?>... params)
+	{
+		try {
+			return type.getMethod(name, params);
+		}
+		catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
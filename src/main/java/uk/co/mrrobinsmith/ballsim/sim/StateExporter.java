@@ -0,0 +1,312 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * StateExporter publishes the latest ball positions of a simulation into a
+ * memory-mapped file, so that programs outside the JVM can draw the
+ * simulation by mapping the same file, without copying the positions through
+ * a socket or pipe.
+ *
+ * The file is guarded by a sequence lock. Before writing a snapshot the
+ * exporter makes the sequence number odd, and once it has written it makes
+ * it even again. A reader reads the sequence number, then the snapshot, then
+ * the sequence number again; if both were the same even number, nothing was
+ * written while it read and the snapshot is consistent, otherwise it tries
+ * again. The writer never waits for readers, and any number of readers can
+ * read at once.
+ *
+ * A snapshot is published at most once every minInterval, so however fast
+ * the simulation runs, the readers see no more frames than they can draw.
+ *
+ * File layout (all values little-endian, the header HEADER_SIZE bytes long):
+ * header: int MAGIC, int FORMAT_VERSION, int capacity (the most balls the
+ *         file holds), int flags (CLOSED once the exporter has closed),
+ *         long sequence number, int time step, int number of balls,
+ *         long time published in milliseconds since the epoch;
+ * body:   float x then float y of each ball, for capacity balls.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class StateExporter implements SimRecorder
+{
+	/* "BSIM" */
+	public static final int MAGIC = 0x4D495342;
+	public static final int FORMAT_VERSION = 1;
+	public static final int HEADER_SIZE = 64;
+	public static final int CLOSED = 1;
+
+	static final int CAPACITY_OFFSET = 8;
+	static final int FLAGS_OFFSET = 12;
+	static final int SEQUENCE_OFFSET = 16;
+	static final int TICK_OFFSET = 24;
+	static final int N_BALLS_OFFSET = 28;
+	static final int TIME_OFFSET = 32;
+
+	/* gives ordered access to the sequence number in a mapped buffer */
+	static final VarHandle SEQUENCE = MethodHandles.byteBufferViewVarHandle(
+		long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final FloatBuffer positions;
+	private final int capacity;
+	private final long minInterval;
+	private long sequence = 0;
+	private long lastPublish;
+	/* a copy of the positions at the latest time step, x then y */
+	private final float[] latest;
+	private int latestTick;
+	private int latestBalls;
+	/* true if the latest time step was not published */
+	private boolean isPending = false;
+
+	/**
+	 * Creates a StateExporter, creating or replacing the file and mapping it.
+	 * @param file the file to export into.
+	 * @param capacity the most balls the file holds.
+	 * @param minInterval the shortest time between snapshots, in
+	 * nanoseconds.
+	 * @throws IOException if the file cannot be created or mapped.
+	 */
+	public StateExporter(File file, int capacity, long minInterval)
+		throws IOException
+	{
+		this.capacity = capacity;
+		this.minInterval = minInterval;
+		latest = new float[2 * capacity];
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+		                           StandardOpenOption.READ,
+		                           StandardOpenOption.WRITE,
+		                           StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+			                     HEADER_SIZE + 8L * capacity);
+		}
+		catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, FORMAT_VERSION);
+		buffer.putInt(CAPACITY_OFFSET, capacity);
+		buffer.putInt(FLAGS_OFFSET, 0);
+		buffer.position(HEADER_SIZE);
+		positions = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+		                  .asFloatBuffer();
+		buffer.position(0);
+		SEQUENCE.setRelease(buffer, SEQUENCE_OFFSET, sequence);
+		lastPublish = System.nanoTime() - minInterval;
+	}
+
+	/**
+	 * Copies the positions of the balls, and publishes them unless a
+	 * snapshot was published less than minInterval ago. The balls are not
+	 * kept, so close() never reads them while the simulation is stepping.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 */
+	public synchronized void record(int tick, Ball[][] pages)
+	{
+		int n = 0;
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				if (n == capacity) {
+					break;
+				}
+				latest[2 * n] = (float) ball.getXPos();
+				latest[2 * n + 1] = (float) ball.getYPos();
+				n++;
+			}
+		}
+		latestTick = tick;
+		latestBalls = n;
+
+		long now = System.nanoTime();
+		if (now - lastPublish < minInterval) {
+			isPending = true;
+			return;
+		}
+		lastPublish = now;
+		publish();
+	}
+
+	/**
+	 * Writes a snapshot of the positions copied at the latest time step.
+	 */
+	private void publish()
+	{
+		isPending = false;
+		/* odd while the snapshot is being written */
+		SEQUENCE.setOpaque(buffer, SEQUENCE_OFFSET, ++sequence);
+		VarHandle.storeStoreFence();
+		positions.position(0);
+		positions.put(latest, 0, 2 * latestBalls);
+		buffer.putInt(TICK_OFFSET, latestTick);
+		buffer.putInt(N_BALLS_OFFSET, latestBalls);
+		buffer.putLong(TIME_OFFSET, System.currentTimeMillis());
+		SEQUENCE.setRelease(buffer, SEQUENCE_OFFSET, ++sequence);
+	}
+
+	/**
+	 * Publishes the latest time step if it was not published, marks the file
+	 * closed, so that readers know no more snapshots will come, and closes
+	 * it. The last snapshot stays readable.
+	 * @throws IOException if the file could not be closed.
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (isPending) {
+			publish();
+		}
+		buffer.putInt(FLAGS_OFFSET, CLOSED);
+		buffer.force();
+		channel.close();
+	}
+
+	/************************************************************************
+	 * Inner class Reader - maps a file written by a StateExporter and reads
+	 * consistent snapshots from it. Programs in other languages read the
+	 * file in the same way.
+	 */
+	public static class Reader implements Closeable
+	{
+		/* tries before a read gives up while the writer is busy */
+		private static final int MAX_TRIES = 1000;
+
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final FloatBuffer positions;
+		private final int capacity;
+		private int tick;
+		private long time;
+		private long sequence;
+
+		/**
+		 * Creates a Reader, mapping the file.
+		 * @param file the file a StateExporter is exporting into.
+		 * @throws IOException if the file cannot be mapped, or was not
+		 * written by a StateExporter.
+		 */
+		public Reader(File file) throws IOException
+		{
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+				                     channel.size());
+			}
+			catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+			    || buffer.getInt(4) != FORMAT_VERSION) {
+				channel.close();
+				throw new IOException(file + " is not a state export file");
+			}
+			capacity = buffer.getInt(CAPACITY_OFFSET);
+			buffer.position(HEADER_SIZE);
+			positions = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+			                  .asFloatBuffer();
+			buffer.position(0);
+		}
+
+		/**
+		 * Gets the most balls the file holds.
+		 * @return the number of balls.
+		 */
+		public int getCapacity()
+		{
+			return capacity;
+		}
+
+		/**
+		 * Reads the latest snapshot, if there is a newer one than was last
+		 * read.
+		 * @param xy the array to copy the positions into, x then y for each
+		 * ball; at least twice the capacity long.
+		 * @return the number of balls read, or -1 if there is no new
+		 * snapshot or the writer was too busy to read one.
+		 */
+		public int read(float[] xy)
+		{
+			for (int t = 0; t < MAX_TRIES; ++t) {
+				long before = (long) SEQUENCE.getAcquire(buffer,
+				                                         SEQUENCE_OFFSET);
+				if ((before & 1) != 0) {
+					Thread.onSpinWait();
+					continue;
+				}
+				if (before == sequence) {
+					return -1;
+				}
+				int n = Math.min(buffer.getInt(N_BALLS_OFFSET), capacity);
+				int readTick = buffer.getInt(TICK_OFFSET);
+				long readTime = buffer.getLong(TIME_OFFSET);
+				for (int i = 0; i < 2 * n; ++i) {
+					xy[i] = positions.get(i);
+				}
+				VarHandle.loadLoadFence();
+				long after = (long) SEQUENCE.getOpaque(buffer,
+				                                       SEQUENCE_OFFSET);
+				if (before == after) {
+					sequence = before;
+					tick = readTick;
+					time = readTime;
+					return n;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Gets the time step of the snapshot last read.
+		 * @return the time step.
+		 */
+		public int getTick()
+		{
+			return tick;
+		}
+
+		/**
+		 * Gets when the snapshot last read was published.
+		 * @return the time in milliseconds since the epoch.
+		 */
+		public long getTime()
+		{
+			return time;
+		}
+
+		/**
+		 * Checks whether the exporter has closed the file.
+		 * @return true if it has closed, false otherwise.
+		 */
+		public boolean isClosed()
+		{
+			return (buffer.getInt(FLAGS_OFFSET) & CLOSED) != 0;
+		}
+
+		/**
+		 * Closes the file.
+		 * @throws IOException if the file could not be closed.
+		 */
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * StopAnalytics builds up statistics of where and when the balls of a
+ * simulation come to rest, as they stop, from the simulation's
+ * BallEventRing.
+ *
+ * It keeps:
+ *
+ * - a histogram of stop positions for each platform, splitting the part of
+ *   the simulation's width above the platform into BINS equal bins;
+ * - a LogLinearHistogram of the number of time steps each ball took to stop,
+ *   counted from when the analytics started;
+ * - a LogLinearHistogram of the number of times each ball bounced before it
+ *   stopped.
+ *
+ * The statistics are of one line of time steps. If the simulation goes back
+ * to an earlier time step, by being rewound or restored, the analytics stops
+ * taking events: the stops and bounces already counted cannot be taken back,
+ * and counting the balls again as they replay would count them twice.
+ *
+ * The memory used depends only on the number of platforms and balls, never
+ * on how long the simulation runs. Every count is kept in atomic arrays, so
+ * the statistics of separate runs, e.g. the members of an ensemble or the
+ * sessions of a SimHost, can be merged into one StopAnalytics without locks,
+ * even while those runs carry on.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class StopAnalytics implements SimRecorder, BallEventHandler
+{
+	/* number of bins each platform's stop positions are counted in */
+	public static final int BINS = 16;
+
+	/* left-hand ends of the platforms, and the right-hand end of the last */
+	private final int[] edges;
+	private final int startTick;
+	private final AtomicLongArray landings;
+	private final LogLinearHistogram stopTimes = new LogLinearHistogram();
+	private final LogLinearHistogram bounceCounts = new LogLinearHistogram();
+	/* the number of bounces of each ball so far */
+	private final int[] bounces;
+	private final BallEventRing.Subscription subscription;
+	/* the last time step recorded */
+	private int lastTick = Integer.MIN_VALUE;
+	private boolean isEnded = false;
+
+	private IntDataParameter stopped;
+	private DoubleDataParameter[] stopTime;
+	private DoubleDataParameter[] bounceCount;
+	private Parameter[] params;
+	private static final double[] PERCENTILES = {50.0, 90.0, 99.0};
+
+	/**
+	 * Creates a StopAnalytics which is not subscribed to any events, to merge
+	 * the statistics of others into.
+	 * @param edges the left-hand ends of the platforms, followed by the
+	 * right-hand end of the last, as given by BallSim.getPlatformEdges().
+	 */
+	public StopAnalytics(int[] edges)
+	{
+		this(edges, 0, 0, null);
+	}
+
+	/**
+	 * Creates a StopAnalytics.
+	 * @param edges the left-hand ends of the platforms, followed by the
+	 * right-hand end of the last, as given by BallSim.getPlatformEdges().
+	 * @param nBalls the number of balls in the simulation.
+	 * @param startTick the time step the analytics starts from.
+	 * @param events the simulation's events, or null to only merge.
+	 */
+	public StopAnalytics(int[] edges, int nBalls, int startTick,
+	                     BallEventRing events)
+	{
+		this.edges = edges.clone();
+		this.startTick = startTick;
+		landings = new AtomicLongArray((edges.length - 1) * BINS);
+		bounces = new int[nBalls];
+		subscription = (events == null) ? null : events.subscribe();
+
+		stopped = new IntDataParameter("Balls analysed", 0, false);
+		stopTime = new DoubleDataParameter[PERCENTILES.length];
+		bounceCount = new DoubleDataParameter[PERCENTILES.length];
+		params = new Parameter[1 + 2 * PERCENTILES.length];
+		int i = 0;
+		params[i++] = stopped;
+		for (int p = 0; p < PERCENTILES.length; ++p) {
+			String name = "p" + (int) PERCENTILES[p];
+			stopTime[p] = new DoubleDataParameter("Stop time " + name
+			                                      + " (ticks)", 0.0, false);
+			params[i++] = stopTime[p];
+		}
+		for (int p = 0; p < PERCENTILES.length; ++p) {
+			String name = "p" + (int) PERCENTILES[p];
+			bounceCount[p] = new DoubleDataParameter("Bounces " + name, 0.0,
+			                                         false);
+			params[i++] = bounceCount[p];
+		}
+	}
+
+	/**
+	 * Gets the data parameters which show the statistics, as of the last
+	 * call to report().
+	 * @return an array of type Parameter.
+	 */
+	public Parameter[] getParams()
+	{
+		return params;
+	}
+
+	/**
+	 * Takes the events added since the last time step. Called on the
+	 * simulation thread after every time step. Stops taking events for good
+	 * if the time step is not after the last one.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 */
+	public void record(int tick, Ball[][] pages)
+	{
+		if (subscription == null || isEnded) {
+			return;
+		}
+		if (tick <= lastTick) {
+			/* the events are of a line of time steps already counted */
+			isEnded = true;
+			subscription.close();
+			return;
+		}
+		lastTick = tick;
+		subscription.poll(this, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Takes any events not yet taken and stops taking them.
+	 */
+	public void close()
+	{
+		if (subscription != null) {
+			if (!isEnded) {
+				subscription.poll(this, Integer.MAX_VALUE);
+			}
+			subscription.close();
+		}
+	}
+
+
+	/**
+	 * Counts a bounce, or the stop of a ball.
+	 * @param tick the time step the event happened in.
+	 * @param ball the index of the ball.
+	 * @param type the type of event.
+	 * @param x the horizontal position of the ball.
+	 * @param y the vertical position of the ball.
+	 */
+	public void handle(int tick, int ball, int type, float x, float y)
+	{
+		if (type == BallEventRing.BOUNCE) {
+			if (ball < bounces.length) {
+				bounces[ball]++;
+			}
+		}
+		else if (type == BallEventRing.STOP) {
+			landings.incrementAndGet(binOf(x));
+			stopTimes.record(Math.max(0, tick - startTick));
+			if (ball < bounces.length) {
+				bounceCounts.record(bounces[ball]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the statistics of another StopAnalytics to this one. Neither is
+	 * locked, so the other may still be taking events.
+	 * @param other a StopAnalytics of a simulation with the same platforms.
+	 * @throws IllegalArgumentException if the platforms are not the same.
+	 */
+	public void merge(StopAnalytics other)
+	{
+		if (!Arrays.equals(edges, other.edges)) {
+			throw new IllegalArgumentException("cannot merge the statistics of "
+			                                   + "different platforms");
+		}
+		for (int b = 0; b < landings.length(); ++b) {
+			long c = other.landings.get(b);
+			if (c != 0) {
+				landings.addAndGet(b, c);
+			}
+		}
+		stopTimes.merge(other.stopTimes);
+		bounceCounts.merge(other.bounceCounts);
+	}
+
+	/**
+	 * Gets the number of balls stopped in each bin above a platform.
+	 * @param platform the index of the platform.
+	 * @return an array of BINS counts, leftmost first.
+	 */
+	public long[] getLandings(int platform)
+	{
+		long[] counts = new long[BINS];
+		for (int b = 0; b < BINS; ++b) {
+			counts[b] = landings.get(platform * BINS + b);
+		}
+		return counts;
+	}
+
+	/**
+	 * Gets the number of platforms stop positions are counted for.
+	 * @return the number of platforms.
+	 */
+	public int getPlatformCount()
+	{
+		return edges.length - 1;
+	}
+
+	/**
+	 * Gets the numbers of time steps the balls took to stop.
+	 * @return the LogLinearHistogram.
+	 */
+	public LogLinearHistogram getStopTimes()
+	{
+		return stopTimes;
+	}
+
+	/**
+	 * Gets the numbers of bounces the balls made before stopping.
+	 * @return the LogLinearHistogram.
+	 */
+	public LogLinearHistogram getBounceCounts()
+	{
+		return bounceCounts;
+	}
+
+	/**
+	 * Shows the statistics so far in the data parameters.
+	 */
+	public void report()
+	{
+		stopped.setValue((int) stopTimes.getCount());
+		for (int p = 0; p < PERCENTILES.length; ++p) {
+			stopTime[p].setValue(stopTimes.getPercentile(PERCENTILES[p]));
+			bounceCount[p].setValue(bounceCounts.getPercentile(PERCENTILES[p]));
+		}
+	}
+
+	/**
+	 * Gets the bin a stop position is counted in.
+	 * @param x the horizontal position.
+	 * @return the index of the bin.
+	 */
+	private int binOf(float x)
+	{
+		int n = edges.length - 1;
+		int platform = Arrays.binarySearch(edges, 0, n, (int) x);
+		if (platform < 0) {
+			platform = Math.max(0, -platform - 2);
+		}
+		int left = edges[platform];
+		int length = Math.max(1, edges[platform + 1] - left);
+		int bin = (int) ((x - left) * BINS / length);
+		return platform * BINS + Math.max(0, Math.min(BINS - 1, bin));
+	}
+
+}
@@ -0,0 +1,126 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+import uk.co.mrrobinsmith.ballsim.base.*;
+
+/**
+ * TerminationPolicy decides when a simulation has run for long enough to be
+ * finished without the user stopping it. A simulation can be finished when
+ * all of its balls have stopped, when the numbers of stopped and off-screen
+ * balls have not changed for a given number of time steps, or when it
+ * reaches a maximum simulation time. Each check takes constant time, so the
+ * policy can be checked every time step.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class TerminationPolicy
+{
+	public static final int NOT_FINISHED = 0;
+	public static final int ALL_STOPPED = 1;
+	public static final int SETTLED = 2;
+	public static final int MAX_SIM_TIME = 3;
+
+	private static final String[] REASONS = {"not finished", "all stopped",
+	                                         "settled", "max sim time"};
+
+	private BooleanParameter stopWhenAllStopped;
+	/* number of time steps without a change in the ball counts, 0 for none */
+	private BoundIntParameter settleTime;
+	/* maximum simulation time, 0 for none */
+	private BoundIntParameter maxSimTime;
+
+	private int lastStoppedBalls;
+	private int lastBallsOffScreen;
+	/* simulation time at which the ball counts last changed */
+	private int lastChangeTime;
+	private int reason = NOT_FINISHED;
+
+	/**
+	 * Creates a TerminationPolicy with all of its checks turned off.
+	 */
+	public TerminationPolicy()
+	{
+		stopWhenAllStopped = new BooleanParameter("Stop when all stopped",
+		                                          false, false);
+		settleTime = new BoundIntParameter("Stop after settled for", 0, 0,
+		                                   10000000, false);
+		maxSimTime = new BoundIntParameter("Max sim time", 0, 0,
+		                                   Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Gets the Parameters which set the policy.
+	 * @return an array of type Parameter.
+	 */
+	public Parameter[] getParams()
+	{
+		Parameter[] params = {stopWhenAllStopped, settleTime, maxSimTime};
+		return params;
+	}
+
+	/**
+	 * Gets the reason the simulation was last found to be finished.
+	 * @return one of NOT_FINISHED, ALL_STOPPED, SETTLED or MAX_SIM_TIME.
+	 */
+	public int getReason()
+	{
+		return reason;
+	}
+
+	/**
+	 * Gets a description of the reason the simulation was last found to be
+	 * finished.
+	 * @return the description.
+	 */
+	public String getReasonString()
+	{
+		return REASONS[reason];
+	}
+
+	/**
+	 * Clears the policy's record of the simulation, ready for a new run.
+	 * @param data the DataAnalyser of the simulation.
+	 */
+	public void reset(DataAnalyser data)
+	{
+		lastStoppedBalls = data.getStoppedBalls();
+		lastBallsOffScreen = data.getBallsOffScreen();
+		lastChangeTime = data.getSimTime();
+		reason = NOT_FINISHED;
+	}
+
+	/**
+	 * Checks whether the simulation is finished. Should be called once every
+	 * time step.
+	 * @param data the DataAnalyser of the simulation.
+	 * @param nBalls the number of balls in the simulation.
+	 * @return true if the simulation is finished, false otherwise.
+	 */
+	public boolean isFinished(DataAnalyser data, int nBalls)
+	{
+		int simTime = data.getSimTime();
+		int stoppedBalls = data.getStoppedBalls();
+
+		if (stopWhenAllStopped.getValue() && stoppedBalls >= nBalls) {
+			reason = ALL_STOPPED;
+		}
+		else if (maxSimTime.getValue() > 0
+		         && simTime >= maxSimTime.getValue()) {
+			reason = MAX_SIM_TIME;
+		}
+		else if (settleTime.getValue() > 0) {
+			int ballsOffScreen = data.getBallsOffScreen();
+			if (stoppedBalls != lastStoppedBalls
+			    || ballsOffScreen != lastBallsOffScreen) {
+				lastStoppedBalls = stoppedBalls;
+				lastBallsOffScreen = ballsOffScreen;
+				lastChangeTime = simTime;
+			}
+			else if (simTime - lastChangeTime >= settleTime.getValue()) {
+				reason = SETTLED;
+			}
+		}
+		return reason != NOT_FINISHED;
+	}
+
+}
@@ -0,0 +1,35 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * TickEvent is a Java Flight Recorder event covering one time step of a
+ * simulation, so that time steps can be lined up against garbage collection
+ * and CPU activity in a recording.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+@Name("uk.co.mrrobinsmith.ballsim.Tick")
+@Label("Simulation Tick")
+@Category("BallSim")
+@StackTrace(false)
+@Description("One time step of the simulation")
+class TickEvent extends Event
+{
+	@Label("Tick")
+	int tick;
+
+	@Label("Active Balls")
+	@Description("Balls which had not stopped at the end of the time step")
+	int activeBalls;
+
+	@Label("Stopped Balls")
+	int stoppedBalls;
+}
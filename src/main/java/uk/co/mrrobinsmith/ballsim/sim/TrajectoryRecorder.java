@@ -0,0 +1,298 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * TrajectoryRecorder records the position and speed of every ball at every
+ * time step into a series of memory-mapped segment files, for analysis
+ * outside the simulation.
+ *
+ * Each segment file starts with a header of HEADER_SIZE bytes: the magic
+ * number, the format version, the number of balls, the size of a record in
+ * bytes, the time step of the first record and the number of records in the
+ * segment. It is followed by fixed-width records, each made up of the int
+ * time step and then the x position, y position, x speed and y speed of each
+ * ball as floats. All values are little-endian.
+ *
+ * Records are packed on the simulation thread into batch buffers, which a
+ * separate writer thread copies into the mapped segments. The simulation
+ * thread never waits for the writer: if all batch buffers are full, the time
+ * step is dropped and counted instead.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class TrajectoryRecorder implements SimRecorder
+{
+	/* "BSTR" */
+	public static final int MAGIC = 0x42535452;
+	public static final int FORMAT_VERSION = 1;
+	public static final int HEADER_SIZE = 32;
+	public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	private static final int RECORD_COUNT_OFFSET = 20;
+	/* approximate size of a batch of records handed to the writer */
+	private static final int BATCH_BYTES = 1024 * 1024;
+	private static final int N_BATCHES = 8;
+	/* marks the end of the recording on the queue of full batches */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final File dir;
+	private final String name;
+	private final int nBalls;
+	private final int recordSize;
+	private final long segmentSize;
+
+	private final BlockingQueue<ByteBuffer> freeBatches;
+	private final BlockingQueue<ByteBuffer> fullBatches;
+	/* the batch being filled by the simulation thread */
+	private ByteBuffer batch;
+	private final Thread writer;
+	private volatile IOException writeError;
+
+	private volatile long recordedTicks = 0;
+	private volatile long droppedTicks = 0;
+
+	/* writer thread state */
+	private int segmentIndex = -1;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private int segmentRecords;
+
+	/**
+	 * Creates a TrajectoryRecorder and starts its writer thread.
+	 * @param dir the directory to write segment files in.
+	 * @param name the name the segment files start with.
+	 * @param nBalls the number of balls in the simulation.
+	 * @param segmentSize the size of each segment file in bytes.
+	 */
+	public TrajectoryRecorder(File dir, String name, int nBalls,
+	                          long segmentSize)
+	{
+		this.dir = dir;
+		this.name = name;
+		this.nBalls = nBalls;
+		recordSize = 4 + 16 * nBalls;
+		this.segmentSize = Math.max(segmentSize, HEADER_SIZE + recordSize);
+
+		int batchTicks = Math.max(1, BATCH_BYTES / recordSize);
+		freeBatches = new ArrayBlockingQueue<ByteBuffer>(N_BATCHES);
+		fullBatches = new ArrayBlockingQueue<ByteBuffer>(N_BATCHES + 1);
+		for (int i = 0; i < N_BATCHES; ++i) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(batchTicks
+			                                              * recordSize);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			freeBatches.add(buffer);
+		}
+
+		writer = new Thread(new Runnable() {
+			public void run() { writeBatches(); }
+		}, "trajectory-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Gets the number of time steps recorded so far.
+	 * @return the number of time steps.
+	 */
+	public long getRecordedTicks()
+	{
+		return recordedTicks;
+	}
+
+	/**
+	 * Gets the number of time steps which were not recorded because the
+	 * writer thread had fallen behind.
+	 * @return the number of time steps.
+	 */
+	public long getDroppedTicks()
+	{
+		return droppedTicks;
+	}
+
+	/**
+	 * Gets the file a segment is written to.
+	 * @param index the index of the segment.
+	 * @return the File.
+	 */
+	public File getSegmentFile(int index)
+	{
+		return new File(dir, name + "." + String.format("%06d", index)
+		                + ".traj");
+	}
+
+	/**
+	 * Records the state of the balls at a time step. Called by the simulation
+	 * thread; never blocks.
+	 * @param tick the time step.
+	 * @param pages the balls, in pages.
+	 */
+	public void record(int tick, Ball[][] pages)
+	{
+		if (batch == null) {
+			batch = freeBatches.poll();
+			if (batch == null) {
+				droppedTicks++;
+				return;
+			}
+		}
+
+		ByteBuffer b = batch;
+		b.putInt(tick);
+		for (Ball[] page : pages) {
+			for (Ball ball : page) {
+				b.putFloat((float) ball.getXPos());
+				b.putFloat((float) ball.getYPos());
+				b.putFloat((float) ball.getXVel());
+				b.putFloat((float) ball.getYVel());
+			}
+		}
+		recordedTicks++;
+
+		if (b.remaining() < recordSize) {
+			handOver();
+		}
+	}
+
+	/**
+	 * Writes out any remaining records, waits for the writer thread to finish
+	 * and closes the segment files.
+	 * @throws IOException if any records could not be written.
+	 */
+	public void close() throws IOException
+	{
+		if (batch != null && batch.position() > 0) {
+			handOver();
+		}
+		fullBatches.add(END);
+		try {
+			writer.join();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	/**
+	 * Passes the current batch to the writer thread.
+	 */
+	private void handOver()
+	{
+		batch.flip();
+		fullBatches.add(batch);
+		batch = null;
+	}
+
+	/**
+	 * Run by the writer thread: copies full batches into the segments until
+	 * the recording is closed.
+	 */
+	private void writeBatches()
+	{
+		try {
+			while (true) {
+				ByteBuffer b = fullBatches.take();
+				if (b == END) {
+					break;
+				}
+				if (writeError == null) {
+					try {
+						writeBatch(b);
+					}
+					catch (IOException e) {
+						writeError = e;
+					}
+				}
+				b.clear();
+				freeBatches.add(b);
+			}
+			closeSegment();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (IOException e) {
+			writeError = e;
+		}
+	}
+
+	/**
+	 * Copies the records in a batch into the segments, starting new segments
+	 * as they fill up.
+	 * @param b the batch.
+	 */
+	private void writeBatch(ByteBuffer b) throws IOException
+	{
+		while (b.hasRemaining()) {
+			if (segment == null || segment.remaining() < recordSize) {
+				openSegment(b.getInt(b.position()));
+			}
+			int limit = b.limit();
+			b.limit(b.position() + recordSize);
+			segment.put(b);
+			b.limit(limit);
+			segmentRecords++;
+		}
+		segment.putInt(RECORD_COUNT_OFFSET, segmentRecords);
+	}
+
+	/**
+	 * Closes the current segment and maps the next one.
+	 * @param firstTick the time step of the first record in the new segment.
+	 */
+	private void openSegment(int firstTick) throws IOException
+	{
+		closeSegment();
+		segmentIndex++;
+		RandomAccessFile file = new RandomAccessFile(
+		                        getSegmentFile(segmentIndex), "rw");
+		channel = file.getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+		                      segmentSize);
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segment.putInt(MAGIC);
+		segment.putInt(FORMAT_VERSION);
+		segment.putInt(nBalls);
+		segment.putInt(recordSize);
+		segment.putInt(firstTick);
+		segment.putInt(0);
+		segment.position(HEADER_SIZE);
+		segmentRecords = 0;
+	}
+
+	/**
+	 * Flushes the current segment to disk and trims off its unused space.
+	 */
+	private void closeSegment() throws IOException
+	{
+		if (segment == null) {
+			return;
+		}
+		segment.putInt(RECORD_COUNT_OFFSET, segmentRecords);
+		segment.force();
+		long used = segment.position();
+		segment = null;
+		try {
+			channel.truncate(used);
+		}
+		catch (IOException e) {
+			/* some platforms cannot truncate a mapped file; the record count
+			 * in the header still marks the end of the data */
+		}
+		channel.close();
+	}
+
+}
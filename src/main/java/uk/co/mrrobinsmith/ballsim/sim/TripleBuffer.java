@@ -0,0 +1,90 @@
+package uk.co.mrrobinsmith.ballsim.sim;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TripleBuffer passes the latest of a stream of values from one writer thread
+ * to one reader thread without locking and without either thread waiting for
+ * the other.
+ *
+ * It holds three values. The writer fills the back value and publishes it by
+ * swapping it with the middle value; the reader takes the latest published
+ * value by swapping its front value with the middle value. Both swaps are a
+ * single atomic exchange, so the writer never overwrites the value being
+ * read and the reader always sees a complete value. Values which are
+ * published faster than they are read are simply skipped.
+ *
+ * @author Robin Smith
+ * @version 1 (19/10/2026)
+ */
+
+public class TripleBuffer<T>
+{
+	/* set in the middle index when it holds a value not yet taken */
+	private static final int FRESH = 4;
+	private static final int INDEX_MASK = 3;
+
+	private final Object[] values;
+	private final AtomicInteger middle = new AtomicInteger(1);
+	/* owned by the writer */
+	private int back = 0;
+	/* owned by the reader */
+	private int front = 2;
+
+	/**
+	 * Creates a TripleBuffer holding three values, which are reused for ever.
+	 * @param a the first value.
+	 * @param b the second value.
+	 * @param c the third value.
+	 */
+	public TripleBuffer(T a, T b, T c)
+	{
+		values = new Object[] {a, b, c};
+	}
+
+	/**
+	 * Gets the value for the writer to fill. It belongs to the writer until it
+	 * is published.
+	 * @return the back value.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getBack()
+	{
+		return (T) values[back];
+	}
+
+	/**
+	 * Publishes the back value, making it the latest value for the reader,
+	 * and gives the writer a new back value to fill.
+	 */
+	public void publish()
+	{
+		back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Makes the latest published value the front value, if one has been
+	 * published since the last call.
+	 * @return true if the front value changed, false otherwise.
+	 */
+	public boolean update()
+	{
+		if ((middle.get() & FRESH) == 0) {
+			return false;
+		}
+		front = middle.getAndSet(front) & INDEX_MASK;
+		return true;
+	}
+
+	/**
+	 * Gets the value for the reader to read. It belongs to the reader until
+	 * the next call to update().
+	 * @return the front value.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getFront()
+	{
+		return (T) values[front];
+	}
+
+}